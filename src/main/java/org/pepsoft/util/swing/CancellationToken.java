@@ -0,0 +1,20 @@
+package org.pepsoft.util.swing;
+
+/**
+ * A token with which a tile consumer signals to a {@link TileProvider} that a
+ * tile which is being painted is no longer needed, for instance because it has
+ * scrolled out of view or the zoom level has changed.
+ *
+ * @author pepijn
+ */
+@FunctionalInterface
+public interface CancellationToken {
+    /**
+     * Indicates whether the painting of the tile has been cancelled. Tile
+     * providers which take a long time to paint a tile may check this
+     * periodically and abandon the tile if it returns {@code true}.
+     *
+     * @return {@code true} if the painting of the tile has been cancelled.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,462 @@
+package org.pepsoft.util.swing;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A persistent, second level cache for rendered tiles, to be used behind the memory cache of one or more
+ * {@link TiledImageViewer}s for {@link TileProvider tile providers} which are expensive to render. Only tile providers
+ * which return a {@link TileProvider#getId() stable ID} are cached. Tiles are stored per tile provider ID, zoom level
+ * and tile coordinates, together with the {@link TileProvider#getTileVersion() version} of the tile provider's
+ * contents, so that tiles rendered from older contents are not used.
+ *
+ * <p>The tiles are stored in a fixed number of memory-mapped segment files, which are used as a ring buffer: new tiles
+ * are appended to the current segment and when the last segment is full, the oldest segment is discarded and reused.
+ * The index from tile to location is kept in memory and rebuilt by scanning the segments when the cache is opened.
+ * The cache directory may only be used by one process at a time.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author pepijn
+ */
+public class DiskTileCache implements Closeable {
+    /**
+     * Open or create a disk tile cache.
+     *
+     * @param directory The directory in which to store the cache. Will be created if it does not exist.
+     * @param maxBytes The approximate maximum size in bytes the cache should take up on disk. The minimum is two
+     *                 segments of 64 MB.
+     * @throws IOException If an I/O error occurs while opening the cache, or if the cache is already in use by another
+     * process.
+     */
+    public DiskTileCache(File directory, long maxBytes) throws IOException {
+        if ((! directory.isDirectory()) && (! directory.mkdirs())) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+        FileLock lock;
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Tile cache directory " + directory + " is already in use");
+        }
+        segments = new MappedByteBuffer[(int) Math.max(maxBytes / SEGMENT_SIZE, 2)];
+        final long[] sequenceNumbers = new long[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            try (RandomAccessFile file = new RandomAccessFile(new File(directory, String.format("tiles-%02d.seg", i)), "rw")) {
+                // Mappings remain valid after the channel has been closed
+                segments[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            }
+            sequenceNumbers[i] = segments[i].getLong(0);
+        }
+
+        // Scan the segments from oldest to newest to rebuild the index
+        final Integer[] order = new Integer[segments.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Long.compare(sequenceNumbers[i1], sequenceNumbers[i2]));
+        for (int segment: order) {
+            if (sequenceNumbers[segment] > 0) {
+                writePosition = scan(segment);
+                currentSegment = segment;
+                sequenceNumber = sequenceNumbers[segment];
+            }
+        }
+        if (sequenceNumber == 0) {
+            // New, empty cache
+            startSegment(0);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Opened tile cache in {} with {} segments; index contains tiles for {} tile providers", directory, segments.length, index.size());
+        }
+    }
+
+    /**
+     * Get a tile from the cache.
+     *
+     * @param providerId The ID of the tile provider.
+     * @param version The current version of the contents of the tile provider.
+     * @param zoom The zoom level at which the tile was rendered.
+     * @param x The X coordinate of the tile.
+     * @param y The Y coordinate of the tile.
+     * @return The tile, or {@code null} if it is not in the cache or was stored for a different version.
+     */
+    public synchronized BufferedImage read(String providerId, long version, int zoom, int x, int y) {
+        if (closed) {
+            return null;
+        }
+        final TileMap<Location> tiles = getTiles(providerId, zoom, false);
+        final Location location = (tiles != null) ? tiles.get(x, y) : null;
+        if (location == null) {
+            misses.increment();
+            return null;
+        } else if (location.version != version) {
+            // Rendered from different contents; it will be overwritten when the tile is rendered again
+            tiles.remove(x, y);
+            misses.increment();
+            return null;
+        }
+        final MappedByteBuffer buffer = segments[location.segment];
+        final int width = buffer.getInt(location.offset), height = buffer.getInt(location.offset + 4);
+        if ((width <= 0) || (height <= 0) || ((long) width * height * 4 > location.length - 8)) {
+            // Corrupted, for instance because the process crashed before the record reached the disk
+            tiles.remove(x, y);
+            misses.increment();
+            return null;
+        }
+        final int[] pixels = new int[width * height];
+        buffer.slice(location.offset + 8, pixels.length * 4).asIntBuffer().get(pixels);
+        final BufferedImage image = new BufferedImage(width, height, TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        hits.increment();
+        return image;
+    }
+
+    /**
+     * Store a tile in the cache, replacing any previously stored version of the tile.
+     *
+     * @param providerId The ID of the tile provider.
+     * @param version The version of the contents of the tile provider from which the tile was rendered.
+     * @param zoom The zoom level at which the tile was rendered.
+     * @param x The X coordinate of the tile.
+     * @param y The Y coordinate of the tile.
+     * @param image The tile image.
+     */
+    public void write(String providerId, long version, int zoom, int x, int y, BufferedImage image) {
+        // Read the pixels outside the lock, since the other render threads would otherwise have to wait for it
+        final int width = image.getWidth(), height = image.getHeight();
+        final int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        final byte[] id = providerId.getBytes(UTF_8);
+        final int recordLength = RECORD_HEADER_SIZE + id.length + TILE_FIELDS_SIZE + 8 + pixels.length * 4;
+        if (recordLength > SEGMENT_SIZE - SEGMENT_HEADER_SIZE) {
+            throw new IllegalArgumentException("Tile too large to cache: " + width + "x" + height);
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            final int position = allocate(recordLength);
+            final MappedByteBuffer buffer = segments[currentSegment];
+            int offset = writeRecordHeader(buffer, position, recordLength, TYPE_TILE, id);
+            buffer.putLong(offset, version);
+            buffer.putInt(offset + 8, zoom);
+            buffer.putInt(offset + 12, x);
+            buffer.putInt(offset + 16, y);
+            final int dataOffset = offset + TILE_FIELDS_SIZE;
+            buffer.putInt(dataOffset, width);
+            buffer.putInt(dataOffset + 4, height);
+            buffer.slice(dataOffset + 8, pixels.length * 4).asIntBuffer().put(pixels);
+            commitRecord(buffer, position);
+            getTiles(providerId, zoom, true).put(x, y, new Location(currentSegment, dataOffset, position + recordLength - dataOffset, version));
+            writes.increment();
+        }
+    }
+
+    /**
+     * Remove a tile from the cache, for instance because its contents have changed.
+     *
+     * @param providerId The ID of the tile provider.
+     * @param zoom The zoom level at which the tile was rendered.
+     * @param x The X coordinate of the tile.
+     * @param y The Y coordinate of the tile.
+     */
+    public synchronized void invalidate(String providerId, int zoom, int x, int y) {
+        if (closed) {
+            return;
+        }
+        final TileMap<Location> tiles = getTiles(providerId, zoom, false);
+        if ((tiles != null) && (tiles.remove(x, y) != null)) {
+            // Record the invalidation, so that the tile is not resurrected when the cache is next opened
+            final byte[] id = providerId.getBytes(UTF_8);
+            final int recordLength = RECORD_HEADER_SIZE + id.length + INVALIDATION_FIELDS_SIZE;
+            final int position = allocate(recordLength);
+            final MappedByteBuffer buffer = segments[currentSegment];
+            final int offset = writeRecordHeader(buffer, position, recordLength, TYPE_TILE_INVALIDATED, id);
+            buffer.putInt(offset, zoom);
+            buffer.putInt(offset + 4, x);
+            buffer.putInt(offset + 8, y);
+            commitRecord(buffer, position);
+        }
+    }
+
+    /**
+     * Remove a tile from the cache at every zoom level at which tiles of the tile provider are stored: the tiles at
+     * lower zoom levels which contain it, the tile itself, and the tiles at higher zoom levels which it contains. For
+     * tile providers which render their tiles at different zoom levels themselves, since a change to the contents of
+     * a tile affects all of those.
+     *
+     * @param providerId The ID of the tile provider.
+     * @param zoom The zoom level at which the coordinates are specified.
+     * @param x The X coordinate of the tile.
+     * @param y The Y coordinate of the tile.
+     */
+    public synchronized void invalidateAllZoomLevels(String providerId, int zoom, int x, int y) {
+        if (closed) {
+            return;
+        }
+        final Map<Integer, TileMap<Location>> providerTiles = index.get(providerId);
+        if (providerTiles == null) {
+            return;
+        }
+        for (Integer level: providerTiles.keySet().toArray(new Integer[providerTiles.size()])) {
+            final int shift = level - zoom;
+            if (shift <= 0) {
+                invalidate(providerId, level, x >> -shift, y >> -shift);
+            } else {
+                final TileMap<Location> tiles = providerTiles.get(level);
+                final int x1 = x << shift, y1 = y << shift, x2 = x1 + (1 << shift), y2 = y1 + (1 << shift);
+                if ((shift < 16) && ((1L << (shift * 2)) <= tiles.size())) {
+                    // There are fewer contained tiles than tiles in the index, so look them up directly
+                    for (int tileX = x1; tileX < x2; tileX++) {
+                        for (int tileY = y1; tileY < y2; tileY++) {
+                            invalidate(providerId, level, tileX, tileY);
+                        }
+                    }
+                } else {
+                    final List<long[]> contained = new ArrayList<>();
+                    tiles.forEach((tileX, tileY, location) -> {
+                        if ((tileX >= x1) && (tileX < x2) && (tileY >= y1) && (tileY < y2)) {
+                            contained.add(new long[] {tileX, tileY});
+                        }
+                    });
+                    for (long[] coords: contained) {
+                        invalidate(providerId, level, (int) coords[0], (int) coords[1]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all tiles of a tile provider from the cache.
+     *
+     * @param providerId The ID of the tile provider.
+     */
+    public synchronized void invalidate(String providerId) {
+        if (closed) {
+            return;
+        }
+        if (index.remove(providerId) != null) {
+            final byte[] id = providerId.getBytes(UTF_8);
+            final int recordLength = RECORD_HEADER_SIZE + id.length;
+            final int position = allocate(recordLength);
+            final MappedByteBuffer buffer = segments[currentSegment];
+            writeRecordHeader(buffer, position, recordLength, TYPE_PROVIDER_INVALIDATED, id);
+            commitRecord(buffer, position);
+        }
+    }
+
+    /**
+     * Get the number of times a tile was requested and found in the cache.
+     *
+     * @return The number of times a tile was requested and found in the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of times a tile was requested and not found in the cache.
+     *
+     * @return The number of times a tile was requested and not found in the cache.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of tiles which have been written to the cache.
+     *
+     * @return The number of tiles which have been written to the cache.
+     */
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    /**
+     * Flush the cache to disk and release the lock on the cache directory. Subsequent reads will miss and writes will
+     * be ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (! closed) {
+            closed = true;
+            for (MappedByteBuffer segment: segments) {
+                segment.force();
+            }
+            index.clear();
+            lockFile.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DiskTileCache{segments=" + segments.length + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", writes=" + getWriteCount() + '}';
+    }
+
+    private TileMap<Location> getTiles(String providerId, int zoom, boolean create) {
+        Map<Integer, TileMap<Location>> providerTiles = index.get(providerId);
+        if (providerTiles == null) {
+            if (! create) {
+                return null;
+            }
+            providerTiles = new HashMap<>();
+            index.put(providerId, providerTiles);
+        }
+        TileMap<Location> tiles = providerTiles.get(zoom);
+        if ((tiles == null) && create) {
+            tiles = new TileMap<>();
+            providerTiles.put(zoom, tiles);
+        }
+        return tiles;
+    }
+
+    /**
+     * Scan a segment and apply all records in it to the index. The scan stops at the first record which is not
+     * consistent, since it may have been left incomplete by a crash; it will be overwritten by the next record written
+     * to the segment.
+     *
+     * @return The position of the end of the last record in the segment.
+     */
+    private int scan(int segment) {
+        final MappedByteBuffer buffer = segments[segment];
+        int position = SEGMENT_HEADER_SIZE;
+        while ((position <= SEGMENT_SIZE - RECORD_HEADER_SIZE) && (buffer.getInt(position) == MAGIC)) {
+            final int recordLength = buffer.getInt(position + 4);
+            final byte type = buffer.get(position + 8);
+            final int idLength = buffer.getShort(position + 9);
+            final int fieldsSize = (type == TYPE_TILE) ? (TILE_FIELDS_SIZE + 8) : ((type == TYPE_TILE_INVALIDATED) ? INVALIDATION_FIELDS_SIZE : 0);
+            if ((idLength < 0) || (recordLength < RECORD_HEADER_SIZE + idLength + fieldsSize) || (recordLength > SEGMENT_SIZE - position)) {
+                logger.warn("Corrupted record found at position {} of tile cache segment {}; ignoring rest of segment", position, segment);
+                break;
+            }
+            final byte[] id = new byte[idLength];
+            buffer.get(position + RECORD_HEADER_SIZE, id);
+            final String providerId = new String(id, UTF_8);
+            final int offset = position + RECORD_HEADER_SIZE + id.length;
+            switch (type) {
+                case TYPE_TILE:
+                    final int dataOffset = offset + TILE_FIELDS_SIZE;
+                    getTiles(providerId, buffer.getInt(offset + 8), true).put(buffer.getInt(offset + 12), buffer.getInt(offset + 16), new Location(segment, dataOffset, position + recordLength - dataOffset, buffer.getLong(offset)));
+                    break;
+                case TYPE_TILE_INVALIDATED:
+                    final TileMap<Location> tiles = getTiles(providerId, buffer.getInt(offset), false);
+                    if (tiles != null) {
+                        tiles.remove(buffer.getInt(offset + 4), buffer.getInt(offset + 8));
+                    }
+                    break;
+                case TYPE_PROVIDER_INVALIDATED:
+                    index.remove(providerId);
+                    break;
+            }
+            position += recordLength;
+        }
+        return position;
+    }
+
+    /**
+     * Allocate space for a record in the current segment, moving to the next segment (and discarding its contents) if
+     * the current one is full.
+     *
+     * @return The position in the current segment at which to write the record.
+     */
+    private int allocate(int recordLength) {
+        if (writePosition + recordLength > SEGMENT_SIZE) {
+            startSegment((currentSegment + 1) % segments.length);
+        }
+        final int position = writePosition;
+        writePosition += recordLength;
+        return position;
+    }
+
+    private void startSegment(int segment) {
+        // Remove the tiles stored in the segment that is about to be overwritten from the index
+        for (Map<Integer, TileMap<Location>> providerTiles: index.values()) {
+            for (TileMap<Location> tiles: providerTiles.values()) {
+                tiles.removeIf((x, y, location) -> location.segment == segment);
+            }
+        }
+        final MappedByteBuffer buffer = segments[segment];
+        buffer.putInt(SEGMENT_HEADER_SIZE, 0);
+        buffer.putLong(0, ++sequenceNumber);
+        currentSegment = segment;
+        writePosition = SEGMENT_HEADER_SIZE;
+    }
+
+    private int writeRecordHeader(MappedByteBuffer buffer, int position, int recordLength, byte type, byte[] id) {
+        buffer.putInt(position + 4, recordLength);
+        buffer.put(position + 8, type);
+        buffer.putShort(position + 9, (short) id.length);
+        buffer.put(position + RECORD_HEADER_SIZE, id);
+        return position + RECORD_HEADER_SIZE + id.length;
+    }
+
+    /**
+     * Mark the end of the data in the segment after the record and then make the record itself valid, so that a
+     * partially written record, or old data from a previous use of the segment, is not mistaken for a valid record
+     * while the process is running. The operating system may write the pages of the segment to disk in any order
+     * though, so after a crash the records are checked for consistency when the segment is scanned and when a tile is
+     * read.
+     */
+    private void commitRecord(MappedByteBuffer buffer, int position) {
+        if (writePosition <= SEGMENT_SIZE - 4) {
+            buffer.putInt(writePosition, 0);
+        }
+        buffer.putInt(position, MAGIC);
+    }
+
+    private final RandomAccessFile lockFile;
+    private final MappedByteBuffer[] segments;
+    private final Map<String, Map<Integer, TileMap<Location>>> index = new HashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), writes = new LongAdder();
+    private int currentSegment, writePosition;
+    private long sequenceNumber;
+    private boolean closed;
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024, SEGMENT_HEADER_SIZE = 8, RECORD_HEADER_SIZE = 11;
+    /**
+     * The size of the fields of a tile record between the header and the image data (version, zoom, x and y), and of
+     * the fields of a tile invalidation record (zoom, x and y).
+     */
+    private static final int TILE_FIELDS_SIZE = 20, INVALIDATION_FIELDS_SIZE = 12;
+    private static final int MAGIC = 0x54494c45; // "TILE"
+    private static final byte TYPE_TILE = 1, TYPE_TILE_INVALIDATED = 2, TYPE_PROVIDER_INVALIDATED = 3;
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DiskTileCache.class);
+
+    private static final class Location {
+        Location(int segment, int offset, int length, long version) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.version = version;
+        }
+
+        /**
+         * The segment, and the offset and length in it of the image data, including the width and height.
+         */
+        final int segment, offset, length;
+        final long version;
+    }
+}
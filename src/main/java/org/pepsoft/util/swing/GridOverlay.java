@@ -0,0 +1,374 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * The grid which a {@link TiledImageViewer} paints over its tiles, rendered into translucent images which are aligned
+ * to the grid rather than to the view, so that panning the view only changes where the images are painted. Dashed
+ * lines and text are slow to render, so they are only rendered again when the zoom level, grid size, grid colour or
+ * label scale change, or when a part of the grid comes into view which had been out of view.
+ *
+ * <p>There are separate images for the area of the view below and to the right of the labels, which contain all grid
+ * lines, and for the bands along the top and left edges of the view, which contain the coordinate labels and the grid
+ * lines they belong to. The bands stay put when the view is panned across them, so their images are aligned to the
+ * grid in one direction only.
+ *
+ * <p>The dashes of the grid lines are aligned to the grid as well, rather than to the edges of the view, so that they
+ * move along with the tiles when the view is panned.
+ *
+ * <p>This class is not thread-safe. It is only used on the event dispatch thread.
+ *
+ * @author pepijn
+ */
+final class GridOverlay {
+    /**
+     * Create a new grid overlay.
+     *
+     * @param normalFont The font with which to paint the coordinate labels.
+     * @param boldFont The font with which to paint the coordinate labels of region borders.
+     */
+    GridOverlay(Font normalFont, Font boldFont) {
+        this.normalFont = normalFont;
+        this.boldFont = boldFont;
+    }
+
+    /**
+     * Paint the grid, within the clip of the canvas.
+     *
+     * @param g2 The canvas on which to paint the grid.
+     * @param originX The X coordinate of the top left corner of the view, in image coordinates multiplied by the scale.
+     * @param originY The Y coordinate of the top left corner of the view, in image coordinates multiplied by the scale.
+     * @param width The width of the view.
+     * @param height The height of the view.
+     * @param zoom The zoom level of the view, as a power of two.
+     * @param gridSize The size of the grid in image coordinates.
+     * @param gridColour The colour of the grid.
+     * @param labelScale The factor by which to multiply the coordinates for the labels.
+     */
+    void paint(Graphics2D g2, int originX, int originY, int width, int height, int zoom, int gridSize, Color gridColour, int labelScale) {
+        final AffineTransform transform = g2.getTransform();
+        final double deviceScaleX = transform.getScaleX(), deviceScaleY = transform.getScaleY();
+        if ((zoom != this.zoom) || (gridSize != this.gridSize) || (! gridColour.equals(this.gridColour))
+                || (labelScale != this.labelScale) || (deviceScaleX != this.deviceScaleX) || (deviceScaleY != this.deviceScaleY)) {
+            configure(g2, zoom, gridSize, gridColour, labelScale, deviceScaleX, deviceScaleY);
+        }
+        if ((originX != evictedOriginX) || (originY != evictedOriginY) || (width != evictedWidth) || (height != evictedHeight)) {
+            evictTiles(originX, originY, width, height);
+        }
+
+        final Rectangle clipBounds = g2.getClipBounds(), viewBounds = new Rectangle(0, 0, width, height);
+        final Rectangle paintBounds = (clipBounds != null) ? clipBounds.intersection(viewBounds) : viewBounds;
+        final Shape savedClip = g2.getClip();
+        try {
+            // The area below and to the right of the labels
+            Rectangle area = paintBounds.intersection(new Rectangle(leftClear, topClear, width - leftClear, height - topClear));
+            if (! area.isEmpty()) {
+                g2.clip(area);
+                final int tx1 = Math.floorDiv(area.x + originX, TILE_SIZE), tx2 = Math.floorDiv(area.x + area.width - 1 + originX, TILE_SIZE);
+                final int ty1 = Math.floorDiv(area.y + originY, TILE_SIZE), ty2 = Math.floorDiv(area.y + area.height - 1 + originY, TILE_SIZE);
+                for (int tx = tx1; tx <= tx2; tx++) {
+                    final int x1 = tx * TILE_SIZE;
+                    for (int ty = ty1; ty <= ty2; ty++) {
+                        final int y1 = ty * TILE_SIZE;
+                        final BufferedImage image = getTile(tiles, tx, ty, TILE_SIZE, TILE_SIZE, g2, tileG2 -> renderLines(tileG2, x1, y1));
+                        g2.drawImage(image, x1 - originX, y1 - originY, TILE_SIZE, TILE_SIZE, null);
+                    }
+                }
+                g2.setClip(savedClip);
+            }
+
+            // The band along the top, with the labelled vertical lines and
+            // their labels, starting at the first labelled line which is
+            // clear of the labels along the left
+            final int bandX = toScaled(getFirstLine(originX + leftClear - 2, xLabelSkip)) - originX;
+            area = paintBounds.intersection(new Rectangle(bandX, 0, width - bandX, topClear));
+            if (! area.isEmpty()) {
+                g2.clip(area);
+                final int tx1 = Math.floorDiv(area.x + originX, TILE_SIZE), tx2 = Math.floorDiv(area.x + area.width - 1 + originX, TILE_SIZE);
+                for (int tx = tx1; tx <= tx2; tx++) {
+                    final int x1 = tx * TILE_SIZE;
+                    final BufferedImage image = getTile(topTiles, tx, 0, TILE_SIZE, topClear, g2, tileG2 -> renderTopBand(tileG2, x1));
+                    g2.drawImage(image, x1 - originX, 0, TILE_SIZE, topClear, null);
+                }
+                g2.setClip(savedClip);
+            }
+
+            // The band along the left, with the labelled horizontal lines and
+            // their labels. The lines are not painted in the band along the
+            // top, but the labels are
+            area = paintBounds.intersection(new Rectangle(0, 0, leftClear, height));
+            if (! area.isEmpty()) {
+                final Rectangle linesArea = area.intersection(new Rectangle(0, topClear - 2, leftClear, height - topClear + 2));
+                final int ty1 = Math.floorDiv(area.y + originY, TILE_SIZE), ty2 = Math.floorDiv(area.y + area.height - 1 + originY, TILE_SIZE);
+                for (int ty = ty1; ty <= ty2; ty++) {
+                    final int y1 = ty * TILE_SIZE;
+                    if (! linesArea.isEmpty()) {
+                        g2.clip(linesArea);
+                        final BufferedImage image = getTile(leftTiles, 0, ty, leftClear, TILE_SIZE, g2, tileG2 -> renderLeftBandLines(tileG2, y1));
+                        g2.drawImage(image, 0, y1 - originY, leftClear, TILE_SIZE, null);
+                        g2.setClip(savedClip);
+                    }
+                    g2.clip(area);
+                    final BufferedImage image = getTile(leftLabelTiles, 0, ty, leftClear, TILE_SIZE, g2, tileG2 -> renderLeftBandLabels(tileG2, y1));
+                    g2.drawImage(image, 0, y1 - originY, leftClear, TILE_SIZE, null);
+                    g2.setClip(savedClip);
+                }
+            }
+        } finally {
+            g2.setClip(savedClip);
+        }
+    }
+
+    /**
+     * Forget the images of the parts of the grid which are more than {@link #RETAINED_MARGIN} images away from the
+     * view. This depends only on the view, not on which part of it is being painted, so that the images of the parts
+     * which are in view are kept however small the areas are which are painted in the mean time.
+     */
+    private void evictTiles(int originX, int originY, int width, int height) {
+        final int tx1 = Math.floorDiv(originX, TILE_SIZE) - RETAINED_MARGIN, tx2 = Math.floorDiv(originX + width - 1, TILE_SIZE) + RETAINED_MARGIN;
+        final int ty1 = Math.floorDiv(originY, TILE_SIZE) - RETAINED_MARGIN, ty2 = Math.floorDiv(originY + height - 1, TILE_SIZE) + RETAINED_MARGIN;
+        tiles.removeIf((tx, ty, image) -> (tx < tx1) || (tx > tx2) || (ty < ty1) || (ty > ty2));
+        topTiles.removeIf((tx, ty, image) -> (tx < tx1) || (tx > tx2));
+        final TileMap.Filter<BufferedImage> outOfViewVertically = (tx, ty, image) -> (ty < ty1) || (ty > ty2);
+        leftTiles.removeIf(outOfViewVertically);
+        leftLabelTiles.removeIf(outOfViewVertically);
+        evictedOriginX = originX;
+        evictedOriginY = originY;
+        evictedWidth = width;
+        evictedHeight = height;
+    }
+
+    /**
+     * Discard the cached images and determine the layout of the grid for a new set of parameters.
+     */
+    private void configure(Graphics2D g2, int zoom, int gridSize, Color gridColour, int labelScale, double deviceScaleX, double deviceScaleY) {
+        this.zoom = zoom;
+        this.gridSize = gridSize;
+        this.gridColour = gridColour;
+        this.labelScale = labelScale;
+        this.deviceScaleX = deviceScaleX;
+        this.deviceScaleY = deviceScaleY;
+        tiles.clear();
+        topTiles.clear();
+        leftTiles.clear();
+        leftLabelTiles.clear();
+
+        effectiveGridSize = gridSize;
+        if (zoom < 0) {
+            // Increase the effective grid size if necessary to prevent the
+            // lines being too close together
+            int minGridSize = Math.min(gridSize, 32);
+            while ((effectiveGridSize >> -zoom) < minGridSize) {
+                effectiveGridSize *= 2;
+            }
+        }
+
+        // Determine the exclusion zone for preventing labels from being
+        // obscured by grid lines or other labels
+        final Rectangle2D fontBounds = boldFont.getStringBounds((labelScale < 5) ? "-00000" : "-000000", g2.getFontRenderContext());
+        fontHeight = (int) Math.round(fontBounds.getHeight());
+        final int fontWidth = (int) Math.round(fontBounds.getWidth());
+        leftClear = fontWidth + 4;
+        topClear = fontHeight + 6;
+
+        drawRegionBorders = (gridSize <= 512) && (gridSize & (gridSize - 1)) == 0; // Power of two
+
+        // Determine per how many grid lines minimum a label can be draw
+        // so that they don't obscure one another, for the horizontal and
+        // vertical direction
+        final float scale = (float) Math.pow(2.0, zoom);
+        xLabelSkip = effectiveGridSize;
+        yLabelSkip = effectiveGridSize;
+        while ((xLabelSkip * scale) < fontWidth) {
+            xLabelSkip += effectiveGridSize;
+        }
+        while ((yLabelSkip * scale) < fontHeight) {
+            yLabelSkip += effectiveGridSize;
+        }
+    }
+
+    /**
+     * Get a cached image of a part of the grid, rendering it if necessary.
+     */
+    private BufferedImage getTile(TileMap<BufferedImage> tiles, int tx, int ty, int width, int height, Graphics2D g2, TileRenderer renderer) {
+        BufferedImage image = tiles.get(tx, ty);
+        if (image == null) {
+            final GraphicsConfiguration gc = g2.getDeviceConfiguration();
+            image = gc.createCompatibleImage((int) Math.ceil(width * deviceScaleX), (int) Math.ceil(height * deviceScaleY), Transparency.TRANSLUCENT);
+            final Graphics2D tileG2 = image.createGraphics();
+            try {
+                tileG2.scale(deviceScaleX, deviceScaleY);
+                tileG2.setColor(gridColour);
+                tileG2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
+                renderer.render(tileG2);
+            } finally {
+                tileG2.dispose();
+            }
+            tiles.put(tx, ty, image);
+        }
+        return image;
+    }
+
+    /**
+     * Render all the grid lines which cross a square of {@link #TILE_SIZE} pixels.
+     *
+     * @param x1 The X coordinate of the square in image coordinates multiplied by the scale.
+     * @param y1 The Y coordinate of the square in image coordinates multiplied by the scale.
+     */
+    private void renderLines(Graphics2D g2, int x1, int y1) {
+        // The dashes continue across squares
+        final Stroke verticalNormalStroke = createNormalStroke(y1), verticalRegionBorderStroke = createRegionBorderStroke(y1);
+        for (int x = getFirstLine(x1); toScaled(x) < (x1 + TILE_SIZE); x += effectiveGridSize) {
+            g2.setStroke(isRegionBorder(x) ? verticalRegionBorderStroke : verticalNormalStroke);
+            final int lineX = toScaled(x) - x1;
+            g2.drawLine(lineX, 0, lineX, TILE_SIZE);
+        }
+        final Stroke horizontalNormalStroke = createNormalStroke(x1), horizontalRegionBorderStroke = createRegionBorderStroke(x1);
+        for (int y = getFirstLine(y1); toScaled(y) < (y1 + TILE_SIZE); y += effectiveGridSize) {
+            g2.setStroke(isRegionBorder(y) ? horizontalRegionBorderStroke : horizontalNormalStroke);
+            final int lineY = toScaled(y) - y1;
+            g2.drawLine(0, lineY, TILE_SIZE, lineY);
+        }
+    }
+
+    /**
+     * Render the part of the band along the top of the view which is {@link #TILE_SIZE} pixels wide, with the labelled
+     * vertical grid lines and their labels.
+     *
+     * @param x1 The X coordinate of the part in image coordinates multiplied by the scale.
+     */
+    private void renderTopBand(Graphics2D g2, int x1) {
+        final Stroke normalStroke = createNormalStroke(0), regionBorderStroke = createRegionBorderStroke(0);
+        // Include the lines to the left, as their labels may extend into this
+        // part
+        for (int x = getFirstLine(x1 - leftClear); toScaled(x) < (x1 + TILE_SIZE); x += effectiveGridSize) {
+            if ((x % xLabelSkip) == 0) {
+                final int lineX = toScaled(x) - x1;
+                g2.setStroke(isRegionBorder(x) ? regionBorderStroke : normalStroke);
+                g2.drawLine(lineX, 0, lineX, topClear);
+                g2.setFont((drawRegionBorders && ((x % 512) == 0)) ? boldFont : normalFont);
+                g2.drawString(Integer.toString(x * labelScale), lineX + 2, fontHeight + 2);
+            }
+        }
+    }
+
+    /**
+     * Render the labelled horizontal grid lines in the part of the band along the left of the view which is
+     * {@link #TILE_SIZE} pixels high.
+     *
+     * @param y1 The Y coordinate of the part in image coordinates multiplied by the scale.
+     */
+    private void renderLeftBandLines(Graphics2D g2, int y1) {
+        final Stroke normalStroke = createNormalStroke(0), regionBorderStroke = createRegionBorderStroke(0);
+        for (int y = getFirstLine(y1); toScaled(y) < (y1 + TILE_SIZE); y += effectiveGridSize) {
+            if ((y % yLabelSkip) == 0) {
+                final int lineY = toScaled(y) - y1;
+                g2.setStroke(isRegionBorder(y) ? regionBorderStroke : normalStroke);
+                g2.drawLine(0, lineY, leftClear, lineY);
+            }
+        }
+    }
+
+    /**
+     * Render the labels of the horizontal grid lines in the part of the band along the left of the view which is
+     * {@link #TILE_SIZE} pixels high.
+     *
+     * @param y1 The Y coordinate of the part in image coordinates multiplied by the scale.
+     */
+    private void renderLeftBandLabels(Graphics2D g2, int y1) {
+        // Include the lines below, as their labels may extend into this part
+        for (int y = getFirstLine(y1); toScaled(y) < (y1 + TILE_SIZE + topClear); y += effectiveGridSize) {
+            if ((y % yLabelSkip) == 0) {
+                g2.setFont((drawRegionBorders && ((y % 512) == 0)) ? boldFont : normalFont);
+                g2.drawString(Integer.toString(y * labelScale), 2, toScaled(y) - y1 - 2);
+            }
+        }
+    }
+
+    private boolean isRegionBorder(int coordinate) {
+        return (coordinate == 0) || (drawRegionBorders && ((coordinate % 512) == 0));
+    }
+
+    /**
+     * Get the first grid line, in image coordinates, which is at or after a coordinate in image coordinates multiplied
+     * by the scale.
+     */
+    private int getFirstLine(int scaledCoordinate) {
+        return getFirstLine(scaledCoordinate, effectiveGridSize);
+    }
+
+    /**
+     * Get the first multiple of a spacing, in image coordinates, which is at or after a coordinate in image
+     * coordinates multiplied by the scale.
+     */
+    private int getFirstLine(int scaledCoordinate, int spacing) {
+        int coordinate = Math.floorDiv(fromScaled(scaledCoordinate), spacing) * spacing;
+        while (toScaled(coordinate) < scaledCoordinate) {
+            coordinate += spacing;
+        }
+        return coordinate;
+    }
+
+    private int toScaled(int coordinate) {
+        return (zoom == 0) ? coordinate : ((zoom < 0) ? (coordinate >> -zoom) : (coordinate << zoom));
+    }
+
+    private int fromScaled(int scaledCoordinate) {
+        return (zoom == 0) ? scaledCoordinate : ((zoom < 0) ? (scaledCoordinate << -zoom) : (scaledCoordinate >> zoom));
+    }
+
+    /**
+     * Create the stroke for normal grid lines, with the dashes offset by a distance along the line.
+     */
+    private static Stroke createNormalStroke(int offset) {
+        return new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[]{2f, 2f}, Math.floorMod(offset, 4));
+    }
+
+    /**
+     * Create the stroke for grid lines which are region borders, with the dashes offset by a distance along the line.
+     */
+    private static Stroke createRegionBorderStroke(int offset) {
+        return new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[]{6f, 2f}, Math.floorMod(offset, 8));
+    }
+
+    private final Font normalFont, boldFont;
+    /**
+     * The cached images for the area below and to the right of the labels, for the band along the top of the view, and
+     * for the lines and the labels in the band along the left of the view, by position in multiples of
+     * {@link #TILE_SIZE}.
+     */
+    private final TileMap<BufferedImage> tiles = new TileMap<>(), topTiles = new TileMap<>(), leftTiles = new TileMap<>(),
+            leftLabelTiles = new TileMap<>();
+    /**
+     * The parameters for which the images have been rendered.
+     */
+    private int zoom, gridSize, labelScale;
+    private Color gridColour;
+    private double deviceScaleX, deviceScaleY;
+    /**
+     * The layout of the grid, as determined by the parameters.
+     */
+    private int effectiveGridSize, fontHeight, leftClear, topClear, xLabelSkip, yLabelSkip;
+    private boolean drawRegionBorders;
+    /**
+     * The view for which the images were last {@link #evictTiles(int, int, int, int) evicted}.
+     */
+    private int evictedOriginX, evictedOriginY, evictedWidth, evictedHeight;
+
+    /**
+     * The width and height in pixels of the parts of the grid which are cached as separate images.
+     */
+    private static final int TILE_SIZE = 256;
+    /**
+     * The number of images beyond the edges of the view for which the images are kept, so that panning the view back
+     * and forth does not have to render them again.
+     */
+    private static final int RETAINED_MARGIN = 1;
+
+    private interface TileRenderer {
+        void render(Graphics2D g2);
+    }
+}
@@ -0,0 +1,325 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageObserver;
+import java.awt.image.VolatileImage;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A set of large accelerated images ("pages") into which the rendered tiles of a {@link TiledImageViewer} are packed,
+ * as an alternative to a separate {@link VolatileImage} for each tile. Each page is divided into slots for tiles of one
+ * size. Painting a tile is a blit of part of its page, and the pages are validated, and restored when their contents
+ * are lost, once per paint instead of once per tile.
+ *
+ * <p>The tiles are {@link Tile} objects, which the viewer stores and validates like any other volatile tile image. A
+ * tile which is no longer fresh (because it was evicted from the {@link TileCache} or replaced) keeps its slot, so that
+ * it can still be painted as a stale tile, until the slot is needed for a new tile. At that point the oldest stale tile
+ * is reclaimed and from then on reports itself as {@link VolatileImage#IMAGE_INCOMPATIBLE incompatible}. New pages are
+ * only created when all slots are taken by fresh tiles.
+ *
+ * <p>This class is thread-safe. All access to the pages is performed while holding the monitor of the atlas.
+ *
+ * @author pepijn
+ */
+final class TileAtlas {
+    /**
+     * Create a new, empty tile atlas.
+     *
+     * @param pageSize The width and height in pixels of the pages.
+     */
+    TileAtlas(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize " + pageSize + " <= 0");
+        }
+        this.pageSize = pageSize;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Copy a rendered tile into a free slot of the atlas.
+     *
+     * @param image The rendered tile. Must be square.
+     * @param gc The graphics configuration for which to create the pages.
+     * @return The tile in the atlas, or {@code null} if the tile does not fit on a page.
+     */
+    synchronized Tile store(Image image, GraphicsConfiguration gc) {
+        final int tileSize = image.getWidth(null);
+        if ((tileSize <= 0) || (tileSize > pageSize)) {
+            return null;
+        }
+        final Tile tile = allocate(tileSize, gc);
+        final Graphics2D g2 = tile.page.image.createGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Src);
+            g2.drawImage(image, tile.x, tile.y, null);
+        } finally {
+            g2.dispose();
+        }
+        return tile;
+    }
+
+    /**
+     * Validate all pages against a graphics configuration. Pages of which the contents were lost are restored, which
+     * invalidates the tiles on them. Pages which are no longer compatible are discarded together with their tiles.
+     *
+     * @param gc The graphics configuration against which to validate the pages.
+     */
+    synchronized void validate(GraphicsConfiguration gc) {
+        for (List<Page> pages: pagesBySize.values()) {
+            pages.removeIf(page -> ! validate(page, gc));
+        }
+    }
+
+    /**
+     * Get the number of pages in the atlas.
+     */
+    synchronized int getPageCount() {
+        int pageCount = 0;
+        for (List<Page> pages: pagesBySize.values()) {
+            pageCount += pages.size();
+        }
+        return pageCount;
+    }
+
+    @Override
+    public String toString() {
+        return "TileAtlas{pageSize=" + pageSize + ", pageCount=" + getPageCount() + '}';
+    }
+
+    /**
+     * Find a slot for a tile: a free slot if there is one, otherwise the slot of the oldest stale tile, otherwise the
+     * first slot of a new page.
+     */
+    private Tile allocate(int tileSize, GraphicsConfiguration gc) {
+        final List<Page> pages = pagesBySize.computeIfAbsent(tileSize, key -> new ArrayList<>());
+        for (Iterator<Page> i = pages.iterator(); i.hasNext(); ) {
+            final Page page = i.next();
+            if (page.freeSlots > 0) {
+                if (validate(page, gc)) {
+                    for (int slot = 0; slot < page.tiles.length; slot++) {
+                        if (page.tiles[slot] == null) {
+                            return page.occupy(slot);
+                        }
+                    }
+                } else {
+                    i.remove();
+                }
+            }
+        }
+        final Deque<Tile> staleTiles = staleTilesBySize.computeIfAbsent(tileSize, key -> new ArrayDeque<>());
+        Tile staleTile;
+        while ((staleTile = staleTiles.poll()) != null) {
+            if (staleTile.reclaimed) {
+                // Its page was discarded
+                continue;
+            }
+            final Page page = staleTile.page;
+            if (validate(page, gc)) {
+                staleTile.reclaimed = true;
+                return page.occupy(staleTile.slot);
+            } else {
+                pages.remove(page);
+            }
+        }
+        final Page page = new Page(gc.createCompatibleVolatileImage(pageSize, pageSize, Transparency.TRANSLUCENT), tileSize);
+        page.image.validate(gc);
+        pages.add(page);
+        return page.occupy(0);
+    }
+
+    /**
+     * Validate a page against a graphics configuration.
+     *
+     * @return {@code true} if the page may still be used.
+     */
+    private boolean validate(Page page, GraphicsConfiguration gc) {
+        switch (page.image.validate(gc)) {
+            case VolatileImage.IMAGE_OK:
+                return true;
+            case VolatileImage.IMAGE_RESTORED:
+                // The contents of the tiles on the page are gone
+                page.generation++;
+                return true;
+            case VolatileImage.IMAGE_INCOMPATIBLE:
+                page.discard();
+                return false;
+            default:
+                throw new InternalError("Unknown validation result");
+        }
+    }
+
+    private final int pageSize;
+    private final Map<Integer, List<Page>> pagesBySize = new HashMap<>();
+    /**
+     * The tiles which are no longer fresh, per tile size, oldest first.
+     */
+    private final Map<Integer, Deque<Tile>> staleTilesBySize = new HashMap<>();
+
+    /**
+     * One accelerated image, divided into slots for tiles of one size.
+     */
+    private final class Page {
+        Page(VolatileImage image, int tileSize) {
+            this.image = image;
+            this.tileSize = tileSize;
+            slotsPerRow = pageSize / tileSize;
+            tiles = new Tile[slotsPerRow * slotsPerRow];
+            freeSlots = tiles.length;
+        }
+
+        Tile occupy(int slot) {
+            if (tiles[slot] == null) {
+                freeSlots--;
+            }
+            final Tile tile = new Tile(this, slot);
+            tiles[slot] = tile;
+            return tile;
+        }
+
+        void discard() {
+            for (Tile tile: tiles) {
+                if (tile != null) {
+                    tile.reclaimed = true;
+                }
+            }
+            Arrays.fill(tiles, null);
+            freeSlots = 0;
+            image.flush();
+        }
+
+        final VolatileImage image;
+        final int tileSize, slotsPerRow;
+        /**
+         * The current or stale tile in each slot.
+         */
+        final Tile[] tiles;
+        int freeSlots;
+        /**
+         * Incremented each time the contents of the page are lost.
+         */
+        int generation;
+    }
+
+    /**
+     * A tile stored in a slot of a page of the atlas. Tiles must be painted with
+     * {@link #draw(Graphics2D, int, int, int, int, int, int, int, int, ImageObserver)} rather than
+     * {@link Graphics#drawImage(Image, int, int, ImageObserver)}, and cannot be painted on.
+     */
+    final class Tile extends VolatileImage {
+        private Tile(Page page, int slot) {
+            this.page = page;
+            this.slot = slot;
+            size = page.tileSize;
+            x = (slot % page.slotsPerRow) * size;
+            y = (slot / page.slotsPerRow) * size;
+            generation = page.generation;
+        }
+
+        /**
+         * Paint (part of) the tile, scaled to a specific area. The coordinates have the same meaning as for
+         * {@link Graphics#drawImage(Image, int, int, int, int, int, int, int, int, ImageObserver)}, with the source
+         * coordinates relative to the tile. Does nothing if the slot of the tile has been reclaimed.
+         */
+        void draw(Graphics2D g2, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+            synchronized (TileAtlas.this) {
+                if (! reclaimed) {
+                    g2.drawImage(page.image, dx1, dy1, dx2, dy2, x + sx1, y + sy1, x + sx2, y + sy2, observer);
+                }
+            }
+        }
+
+        /**
+         * Indicate that the tile is no longer fresh, so that its slot may be reclaimed for a new tile.
+         */
+        void demote() {
+            synchronized (TileAtlas.this) {
+                if ((! demoted) && (! reclaimed)) {
+                    demoted = true;
+                    staleTilesBySize.computeIfAbsent(size, key -> new ArrayDeque<>()).add(this);
+                }
+            }
+        }
+
+        @Override
+        public BufferedImage getSnapshot() {
+            final BufferedImage snapshot = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+            final Graphics2D g2 = snapshot.createGraphics();
+            try {
+                g2.setComposite(AlphaComposite.Src);
+                draw(g2, 0, 0, size, size, 0, 0, size, size, null);
+            } finally {
+                g2.dispose();
+            }
+            return snapshot;
+        }
+
+        @Override
+        public int getWidth() {
+            return size;
+        }
+
+        @Override
+        public int getHeight() {
+            return size;
+        }
+
+        @Override
+        public Graphics2D createGraphics() {
+            throw new UnsupportedOperationException("Tiles in a tile atlas cannot be painted on");
+        }
+
+        /**
+         * Report the state of the tile as of the last time its page was {@link TileAtlas#validate(GraphicsConfiguration)
+         * validated}: {@link #IMAGE_INCOMPATIBLE} if the slot has been reclaimed, {@link #IMAGE_RESTORED} if the
+         * contents of the page have been lost since the tile was stored, or {@link #IMAGE_OK} otherwise.
+         */
+        @Override
+        public int validate(GraphicsConfiguration gc) {
+            synchronized (TileAtlas.this) {
+                if (reclaimed) {
+                    return IMAGE_INCOMPATIBLE;
+                } else if (generation != page.generation) {
+                    return IMAGE_RESTORED;
+                } else {
+                    return IMAGE_OK;
+                }
+            }
+        }
+
+        @Override
+        public boolean contentsLost() {
+            synchronized (TileAtlas.this) {
+                return reclaimed || (generation != page.generation) || page.image.contentsLost();
+            }
+        }
+
+        @Override
+        public ImageCapabilities getCapabilities() {
+            return page.image.getCapabilities();
+        }
+
+        @Override
+        public int getWidth(ImageObserver observer) {
+            return size;
+        }
+
+        @Override
+        public int getHeight(ImageObserver observer) {
+            return size;
+        }
+
+        @Override
+        public Object getProperty(String name, ImageObserver observer) {
+            return UndefinedProperty;
+        }
+
+        private final Page page;
+        private final int slot, size, x, y, generation;
+        private boolean demoted, reclaimed;
+    }
+}
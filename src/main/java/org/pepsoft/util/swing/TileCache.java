@@ -0,0 +1,288 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A byte-budgeted memory cache for rendered tile images, which may be used by one {@link TiledImageViewer} or shared by
+ * several of them.
+ *
+ * <p>Tile images in the cache are kept strongly reachable until the combined size of the cached images exceeds the
+ * budget, at which point tiles which have not been used recently are evicted according to the CLOCK algorithm (an
+ * approximation of LRU which does not require a lock to record that a tile has been used). Evicted tiles are not
+ * discarded outright but demoted to softly reachable stale tiles, which the viewer will keep displaying while the tile
+ * is being rendered again.
+ *
+ * @author pepijn
+ */
+public class TileCache {
+    /**
+     * Create a new tile cache. Note that the budget should comfortably exceed the size of the tiles which are visible
+     * at any one time, or tiles will be evicted (and rendered again) while they are still in view.
+     *
+     * @param maxBytes The maximum combined size in bytes of the tile images to keep in the cache.
+     */
+    public TileCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes " + maxBytes + " < 0");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the maximum combined size in bytes of the tile images to keep in the cache.
+     *
+     * @return The maximum combined size in bytes of the tile images to keep in the cache.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Set the maximum combined size in bytes of the tile images to keep in the cache. If the cache is currently larger
+     * than that, tiles will be evicted immediately.
+     *
+     * @param maxBytes The maximum combined size in bytes of the tile images to keep in the cache.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes " + maxBytes + " < 0");
+        }
+        this.maxBytes = maxBytes;
+        evictIfNecessary();
+    }
+
+    /**
+     * Get the current combined size in bytes of the tile images in the cache.
+     *
+     * @return The current combined size in bytes of the tile images in the cache.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of tile images currently in the cache.
+     *
+     * @return The number of tile images currently in the cache.
+     */
+    public synchronized int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Get the number of times a tile was requested and found in the cache.
+     *
+     * @return The number of times a tile was requested and found in the cache.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of times a tile was requested and not found in the cache, meaning it had to be rendered.
+     *
+     * @return The number of times a tile was requested and not found in the cache.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of tiles which have been evicted from the cache because it was over budget.
+     *
+     * @return The number of tiles which have been evicted from the cache.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Reset the hit, miss and eviction counters to zero.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "TileCache{size=" + getSize() + ", maxBytes=" + getMaxBytes() + ", tileCount=" + getTileCount()
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    /**
+     * Add a freshly rendered tile image to the cache, evicting other tiles if that puts the cache over budget.
+     *
+     * @param image The tile image to add.
+     * @return The cache entry for the tile image.
+     */
+    synchronized Entry put(Image image) {
+        final Entry entry = new Entry(image, image.getWidth(null) * image.getHeight(null) * 4, false);
+        // Newly added tiles are about to be painted, so treat them as recently used
+        entry.referenced = true;
+        if (hand == null) {
+            entry.next = entry;
+            entry.previous = entry;
+            hand = entry;
+        } else {
+            // Insert the entry just behind the hand, so that it will be the last one to be considered for eviction
+            entry.next = hand;
+            entry.previous = hand.previous;
+            hand.previous.next = entry;
+            hand.previous = entry;
+        }
+        entry.linked = true;
+        size += entry.bytes;
+        tileCount++;
+        evictIfNecessary();
+        return entry;
+    }
+
+    /**
+     * Get the tile image from a cache entry and record the access.
+     *
+     * @param entry The cache entry.
+     * @return The tile image, or {@code null} if it has been evicted from the cache, in which case the stale image may
+     * still be available from {@link Entry#toReference()}.
+     */
+    Image get(Entry entry) {
+        final Image image = entry.image;
+        if (image != null) {
+            entry.referenced = true;
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return image;
+    }
+
+    /**
+     * Record that a tile was requested which was not in the cache at all.
+     */
+    void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Remove an entry from the cache and demote the tile image to a softly reachable stale tile image. This does not
+     * count as an eviction. Does nothing if the entry has already been removed or evicted.
+     *
+     * @param entry The entry to remove.
+     * @return A reference to the (now stale) tile image.
+     */
+    synchronized Reference<? extends Image> release(Entry entry) {
+        if (entry.linked) {
+            unlink(entry);
+        }
+        return entry.toReference();
+    }
+
+    /**
+     * Evict tiles according to the CLOCK algorithm until the cache is no longer over budget.
+     */
+    private void evictIfNecessary() {
+        while ((size > maxBytes) && (hand != null)) {
+            if (hand.referenced) {
+                // Give it a second chance
+                hand.referenced = false;
+                hand = hand.next;
+            } else {
+                unlink(hand);
+                evictions.increment();
+            }
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.next == entry) {
+            hand = null;
+        } else {
+            entry.previous.next = entry.next;
+            entry.next.previous = entry.previous;
+            if (hand == entry) {
+                hand = entry.next;
+            }
+        }
+        entry.next = null;
+        entry.previous = null;
+        entry.linked = false;
+        size -= entry.bytes;
+        tileCount--;
+        entry.demote();
+    }
+
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+    private long maxBytes, size;
+    private int tileCount;
+    private Entry hand;
+
+    /**
+     * A cached tile image. While the entry is in the cache the image is strongly reachable. Once it has been evicted
+     * or removed it is only softly reachable.
+     */
+    static final class Entry {
+        /**
+         * Create an entry which is not linked into any cache, for use as a sentinel value. The image will remain
+         * strongly reachable for as long as the entry is.
+         *
+         * @param image The image to return from {@link #getImage()}. May be {@code null}.
+         */
+        Entry(Image image) {
+            this(image, 0, true);
+        }
+
+        private Entry(Image image, int bytes, boolean sentinel) {
+            this.image = image;
+            this.bytes = bytes;
+            this.sentinel = sentinel;
+            staleRef = new SoftReference<>(image);
+        }
+
+        /**
+         * Determine whether this is a sentinel entry which was not created by a cache.
+         *
+         * @return {@code true} if this is a sentinel entry.
+         */
+        boolean isSentinel() {
+            return sentinel;
+        }
+
+        /**
+         * Get the tile image without recording the access.
+         *
+         * @return The tile image, or {@code null} if it has been evicted from the cache.
+         */
+        Image getImage() {
+            return image;
+        }
+
+        /**
+         * Get a soft reference to the tile image, regardless of whether it is still in the cache.
+         *
+         * @return A soft reference to the tile image.
+         */
+        Reference<? extends Image> toReference() {
+            return staleRef;
+        }
+
+        private void demote() {
+            if (image instanceof TileAtlas.Tile) {
+                // Allow the slot to be reclaimed once it is needed for a fresh tile
+                ((TileAtlas.Tile) image).demote();
+            }
+            image = null;
+        }
+
+        private final int bytes;
+        private final boolean sentinel;
+        private final Reference<Image> staleRef;
+        private volatile Image image;
+        private volatile boolean referenced;
+        private Entry next, previous;
+        private boolean linked;
+    }
+}
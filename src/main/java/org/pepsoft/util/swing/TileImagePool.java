@@ -0,0 +1,246 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of tile images which are no longer in use, so that they can be reused for rendering other tiles
+ * instead of being left to the garbage collector while new images are allocated. The images are kept per kind
+ * (accelerated or not), size and transparency. May be used by one {@link TiledImageViewer} or shared by several of
+ * them.
+ *
+ * <p>Images which are released to the pool only become available for reuse once the viewer has started painting
+ * again, since they may still be in the process of being painted on the event dispatch thread when they are released.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author pepijn
+ */
+public class TileImagePool {
+    /**
+     * Create a new tile image pool.
+     *
+     * @param maxImages The maximum number of images to keep in the pool.
+     */
+    public TileImagePool(int maxImages) {
+        if (maxImages < 0) {
+            throw new IllegalArgumentException("maxImages " + maxImages + " < 0");
+        }
+        this.maxImages = maxImages;
+    }
+
+    /**
+     * Get the maximum number of images to keep in the pool.
+     *
+     * @return The maximum number of images to keep in the pool.
+     */
+    public synchronized int getMaxImages() {
+        return maxImages;
+    }
+
+    /**
+     * Get the number of images currently in the pool, including those which are not available for reuse yet.
+     *
+     * @return The number of images currently in the pool.
+     */
+    public synchronized int getImageCount() {
+        return pending.size() + availableCount;
+    }
+
+    /**
+     * Get the number of times an image was requested and reused from the pool.
+     *
+     * @return The number of times an image was reused from the pool.
+     */
+    public long getReuseCount() {
+        return reuses.sum();
+    }
+
+    /**
+     * Get the number of times an image was requested and had to be allocated because no suitable image was available
+     * from the pool.
+     *
+     * @return The number of times an image had to be allocated.
+     */
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    /**
+     * Get the fraction of requested images which were reused from the pool.
+     *
+     * @return The fraction of requested images which were reused from the pool, or zero if no images have been
+     * requested.
+     */
+    public double getReuseRate() {
+        final long reuses = this.reuses.sum(), requests = reuses + allocations.sum();
+        return (requests > 0) ? ((double) reuses / requests) : 0.0;
+    }
+
+    /**
+     * Reset the reuse and allocation counters to zero.
+     */
+    public void resetStatistics() {
+        reuses.reset();
+        allocations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "TileImagePool{imageCount=" + getImageCount() + ", maxImages=" + getMaxImages() + ", reuses="
+                + getReuseCount() + ", allocations=" + getAllocationCount() + ", reuseRate=" + getReuseRate() + '}';
+    }
+
+    /**
+     * Get an accelerated image, from the pool if possible. Translucent images are cleared. Opaque images are not, since
+     * their previous contents will be completely painted over.
+     *
+     * @param gc The graphics configuration with which the image must be compatible.
+     * @param size The width and height of the image.
+     * @param opaque Whether to get an opaque rather than a translucent image.
+     * @return An accelerated image of the specified size and transparency.
+     */
+    VolatileImage getVolatileImage(GraphicsConfiguration gc, int size, boolean opaque) {
+        VolatileImage image;
+        while ((image = (VolatileImage) take(true, size, opaque)) != null) {
+            if (image.validate(gc) != VolatileImage.IMAGE_INCOMPATIBLE) {
+                if (! opaque) {
+                    clear(image, size);
+                }
+                reuses.increment();
+                return image;
+            }
+            image.flush();
+        }
+        allocations.increment();
+        image = gc.createCompatibleVolatileImage(size, size, opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+        image.validate(gc);
+        return image;
+    }
+
+    /**
+     * Get an image on the heap, from the pool if possible. Translucent images are cleared. Opaque images are not,
+     * since their previous contents will be completely painted over.
+     *
+     * @param size The width and height of the image.
+     * @param opaque Whether to get an opaque rather than a translucent image.
+     * @return An image of type {@link BufferedImage#TYPE_INT_RGB} (if opaque) or {@link BufferedImage#TYPE_INT_ARGB}
+     * (if translucent) of the specified size.
+     */
+    BufferedImage getBufferedImage(int size, boolean opaque) {
+        final BufferedImage image = (BufferedImage) take(false, size, opaque);
+        if (image != null) {
+            if (! opaque) {
+                clear(image, size);
+            }
+            reuses.increment();
+            return image;
+        }
+        allocations.increment();
+        return new BufferedImage(size, size, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Return an image which is no longer used to the pool. It will become available for reuse once
+     * {@link #commit()} is invoked. Images which are not square, translucent or opaque tile images (including
+     * {@link TileAtlas.Tile tiles in a tile atlas}) or which have been {@link #exclude(Image) excluded}, and images
+     * which do not fit in the pool, are ignored.
+     *
+     * @param image The image to return to the pool. May be {@code null}.
+     */
+    synchronized void release(Image image) {
+        if ((image == null) || (image instanceof TileAtlas.Tile) || excluded.contains(image)) {
+            return;
+        }
+        if (image instanceof VolatileImage) {
+            final VolatileImage volatileImage = (VolatileImage) image;
+            if ((volatileImage.getTransparency() == Transparency.BITMASK) || (volatileImage.getWidth() != volatileImage.getHeight())
+                    || (volatileImage.getWidth() <= 0)) {
+                return;
+            }
+        } else if (image instanceof BufferedImage) {
+            final BufferedImage bufferedImage = (BufferedImage) image;
+            if (((bufferedImage.getType() != BufferedImage.TYPE_INT_ARGB) && (bufferedImage.getType() != BufferedImage.TYPE_INT_RGB))
+                    || (bufferedImage.getWidth() != bufferedImage.getHeight())) {
+                return;
+            }
+        } else {
+            return;
+        }
+        if (((pending.size() + availableCount) < maxImages) && pooled.add(image)) {
+            pending.add(image);
+        }
+    }
+
+    /**
+     * Make the images which have been released since the last invocation available for reuse. Must be invoked on
+     * the event dispatch thread, at a moment when none of the released images can still be in the process of being
+     * painted, such as at the start of painting.
+     */
+    synchronized void commit() {
+        for (Image image: pending) {
+            final boolean accelerated = image instanceof VolatileImage;
+            final boolean opaque = accelerated ? (((VolatileImage) image).getTransparency() == Transparency.OPAQUE)
+                    : (((BufferedImage) image).getType() == BufferedImage.TYPE_INT_RGB);
+            available.computeIfAbsent(getKey(accelerated, image.getWidth(null), opaque), key -> new ArrayDeque<>()).push(image);
+        }
+        availableCount += pending.size();
+        pending.clear();
+    }
+
+    /**
+     * Never accept an image into the pool, for instance because it is shared with another viewer.
+     *
+     * @param image The image to exclude. May be {@code null}.
+     */
+    synchronized void exclude(Image image) {
+        if (image != null) {
+            excluded.add(image);
+        }
+    }
+
+    private synchronized Image take(boolean accelerated, int size, boolean opaque) {
+        final Deque<Image> images = available.get(getKey(accelerated, size, opaque));
+        final Image image = (images != null) ? images.poll() : null;
+        if (image != null) {
+            availableCount--;
+            pooled.remove(image);
+        }
+        return image;
+    }
+
+    private static long getKey(boolean accelerated, int size, boolean opaque) {
+        return ((long) size << 2) | (opaque ? 2 : 0) | (accelerated ? 1 : 0);
+    }
+
+    private static void clear(Image image, int size) {
+        final Graphics2D g2 = (Graphics2D) image.getGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, size, size);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private final LongAdder reuses = new LongAdder(), allocations = new LongAdder();
+    private final int maxImages;
+    /**
+     * The released images which are not available for reuse yet.
+     */
+    private final List<Image> pending = new ArrayList<>();
+    /**
+     * The images which are available for reuse, per kind, size and transparency, most recently released first.
+     */
+    private final Map<Long, Deque<Image>> available = new HashMap<>();
+    /**
+     * All images in the pool, so that an image which is released twice is only pooled once.
+     */
+    private final Set<Image> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Image> excluded = Collections.newSetFromMap(new WeakHashMap<>());
+    private int availableCount;
+}
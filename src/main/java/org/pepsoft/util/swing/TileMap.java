@@ -0,0 +1,227 @@
+package org.pepsoft.util.swing;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from tile coordinates to values, which packs the coordinates into a primitive {@code long} key and uses
+ * open addressing with linear probing, so that lookups do not allocate any objects. {@code null} values are not
+ * supported.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @param <V> The type of the values.
+ * @author pepijn
+ */
+final class TileMap<V> {
+    TileMap() {
+        this(16);
+    }
+
+    /**
+     * Create a new, empty tile map.
+     *
+     * @param expectedSize The number of entries the map should be able to hold without having to grow.
+     */
+    TileMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Create a new tile map containing the same entries as another tile map.
+     *
+     * @param map The tile map to copy.
+     */
+    TileMap(TileMap<? extends V> map) {
+        keys = map.keys.clone();
+        values = map.values.clone();
+        mask = map.mask;
+        size = map.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked") // Guaranteed by put()
+    V get(int x, int y) {
+        final long key = key(x, y);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            final Object value = values[i];
+            if (value == null) {
+                return null;
+            } else if (keys[i] == key) {
+                return (V) value;
+            }
+        }
+    }
+
+    boolean containsKey(int x, int y) {
+        return get(x, y) != null;
+    }
+
+    /**
+     * Associate a value with a tile.
+     *
+     * @return The value previously associated with the tile, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked") // Guaranteed by put()
+    V put(int x, int y, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final long key = key(x, y);
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                final V previousValue = (V) values[i];
+                values[i] = value;
+                return previousValue;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the value associated with a tile, if any.
+     *
+     * @return The value previously associated with the tile, or {@code null} if there was none.
+     */
+    @SuppressWarnings("unchecked") // Guaranteed by put()
+    V remove(int x, int y) {
+        final long key = key(x, y);
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                final V previousValue = (V) values[i];
+                removeSlot(i);
+                return previousValue;
+            }
+        }
+        return null;
+    }
+
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Invoke a visitor for every entry in the map. The map must not be modified by the visitor.
+     */
+    @SuppressWarnings("unchecked") // Guaranteed by put()
+    void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(x(keys[i]), y(keys[i]), (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Remove all entries for which a filter returns {@code true}.
+     *
+     * @return The number of entries which were removed.
+     */
+    @SuppressWarnings("unchecked") // Guaranteed by put()
+    int removeIf(Filter<? super V> filter) {
+        int removed = 0;
+        for (int i = 0; i < values.length; ) {
+            if ((values[i] != null) && filter.test(x(keys[i]), y(keys[i]), (V) values[i])) {
+                // Removing may shift a later entry into this slot, so examine it again
+                removeSlot(i);
+                removed++;
+            } else {
+                i++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Pack tile coordinates into a single {@code long}.
+     */
+    static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * Get the X coordinate from a packed key.
+     */
+    static int x(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Get the Y coordinate from a packed key.
+     */
+    static int y(long key) {
+        return (int) key;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing, to spread the (typically small and clustered) coordinates over the table
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Empty a slot, shifting subsequent entries of the same probe sequence back so that no tombstones are needed.
+     */
+    private void removeSlot(int i) {
+        values[i] = null;
+        size--;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            final int home = slot(keys[j]);
+            // Move the entry at j to the hole at i if its home slot is not cyclically in (i, j]
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private long[] keys;
+    private Object[] values;
+    private int mask, size;
+
+    interface Visitor<V> {
+        void visit(int x, int y, V value);
+    }
+
+    interface Filter<V> {
+        boolean test(int x, int y, V value);
+    }
+}
@@ -38,9 +38,10 @@ public interface TileProvider {
      * tile in a different location on the provided image than the top left
      * corner.
      *
-     * <p>The provider must paint the tile completely. The image is guaranteed
-     * to support transparency and the provider may make parts or all of the
-     * tile transparent.
+     * <p>The provider must paint the tile completely. Unless the provider is
+     * {@link #isOpaque() opaque}, the image is guaranteed to support
+     * transparency and the provider may make parts or all of the tile
+     * transparent.
      *
      * <p>The provider may fail to paint the tile for some reason, for example
      * because a dependency is not met, in which case it should return
@@ -122,4 +123,274 @@ public interface TileProvider {
      * @param zoom The zoom as an exponent of two.
      */
     void setZoom(int zoom);
+
+    /**
+     * Get an identifier for the contents of this tile provider which is
+     * stable across application restarts, so that tiles rendered by it may be
+     * stored in a {@link DiskTileCache}. The default implementation returns
+     * {@code null}, meaning that the tiles should not be stored on disk.
+     *
+     * @return A stable identifier for the contents of this tile provider, or
+     * {@code null} if its tiles should not be stored on disk.
+     */
+    default String getId() {
+        return null;
+    }
+
+    /**
+     * Get the version of the contents of this tile provider, for instance a
+     * modification counter or a hash of the underlying data. Tiles which were
+     * stored in a {@link DiskTileCache} for a different version will not be
+     * used. Only relevant if {@link #getId()} returns a non-{@code null}
+     * value. The default implementation returns zero.
+     *
+     * @return The version of the contents of this tile provider.
+     */
+    default long getTileVersion() {
+        return 0L;
+    }
+
+    /**
+     * Indicates whether the tile provider can paint tiles for a different zoom
+     * level than its current one, using
+     * {@link #paintTile(Image, int, int, int, int, int)}, concurrently with
+     * the painting of tiles at its current zoom level. This allows a tile
+     * consumer to prepare tiles for other zoom levels in advance. Only
+     * relevant if {@link #isZoomSupported()} returns {@code true}. The default
+     * implementation returns {@code false}.
+     *
+     * @return {@code true} if the tile provider can paint tiles for a zoom
+     * level other than its current one.
+     */
+    default boolean isPaintAtZoomSupported() {
+        return false;
+    }
+
+    /**
+     * Paint the tile at the specified tile coordinates and zoom level to an
+     * image, regardless of the current zoom level of the tile provider. Will
+     * only be invoked if {@link #isPaintAtZoomSupported()} returns
+     * {@code true}. Otherwise the contract is the same as for
+     * {@link #paintTile(Image, int, int, int, int)}. The default
+     * implementation paints nothing and returns {@code false}, so that a tile
+     * provider which does not paint tiles at other zoom levels has the tile
+     * treated as one which could not be painted.
+     *
+     * @param image The image on which to paint the tile
+     * @param x The X coordinate (in tiles at the specified zoom level) of the
+     *          tile to paint.
+     * @param y The Y coordinate (in tiles at the specified zoom level) of the
+     *          tile to paint.
+     * @param dx The X coordinate at which to paint the tile in the image.
+     * @param dy The Y coordinate at which to paint the tile in the image.
+     * @param zoom The zoom level as an exponent of two at which to paint the
+     *             tile.
+     * @return {@code true} if the tile was painted; {@code false} if
+     * it could not be painted for some reason.
+     */
+    default boolean paintTile(Image image, int x, int y, int dx, int dy, int zoom) {
+        return false;
+    }
+
+    /**
+     * Get the strategy with which the tiles of this tile provider should be
+     * rendered, if it has a preference. The default implementation returns
+     * {@code null}, meaning that the tile consumer should decide.
+     *
+     * @return The strategy with which the tiles of this tile provider should be
+     * rendered, or {@code null} if it has no preference.
+     */
+    default TileRenderStrategy getRenderStrategy() {
+        return null;
+    }
+
+    /**
+     * Indicates whether the tile provider can paint several tiles concurrently
+     * on different threads. If not, the tile consumer will only paint one
+     * tile at a time. The default implementation returns {@code true}.
+     *
+     * @return {@code true} if the tile provider can paint several tiles
+     * concurrently.
+     */
+    default boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * Get the maximum number of tiles of this tile provider which should be
+     * painted concurrently, for instance because painting a tile takes up a
+     * lot of memory or competes for a limited resource. Only relevant if
+     * {@link #isThreadSafe()} returns {@code true}. The default implementation
+     * returns zero, meaning that there is no limit other than the number of
+     * render threads of the tile consumer.
+     *
+     * @return The maximum number of tiles of this tile provider which should
+     * be painted concurrently, or zero for no limit.
+     */
+    default int getMaxConcurrentRenders() {
+        return 0;
+    }
+
+    /**
+     * Get the relative share of the render threads of the tile consumer which
+     * this tile provider should receive when the tiles of several tile
+     * providers are waiting to be painted. For instance a tile provider with
+     * weight 2 will have twice as many tiles painted as a tile provider with
+     * weight 1, all else being equal. The default implementation returns 1.
+     *
+     * @return The relative share of the render threads this tile provider
+     * should receive. Must be at least 1.
+     */
+    default int getRenderWeight() {
+        return 1;
+    }
+
+    /**
+     * Prepare for painting a tile at the current zoom level, for instance by
+     * loading the data from which it is painted from disk. Invoked from a
+     * background thread before {@link #paintTile(Image, int, int, int, int,
+     * CancellationToken)} when the tiles are rendered with the
+     * {@link TileRenderStrategy#IO_BOUND} strategy, outside the section in
+     * which the number of concurrently painted tiles is limited, so that it may
+     * block on I/O without holding up the painting of other tiles. There is no
+     * guarantee that the tile will actually be painted afterwards, or that it
+     * will be painted on the same thread. The default implementation does
+     * nothing.
+     *
+     * @param x The X coordinate (in tiles) of the tile to prepare.
+     * @param y The Y coordinate (in tiles) of the tile to prepare.
+     * @param cancellationToken The token which indicates whether the tile is
+     *                          still needed.
+     */
+    default void prepareTile(int x, int y, CancellationToken cancellationToken) {
+        // Do nothing
+    }
+
+    /**
+     * Paint the tile at the specified tile coordinates to an image, with the
+     * possibility for the tile consumer to cancel the painting of the tile if
+     * it is no longer needed. Otherwise the contract is the same as for
+     * {@link #paintTile(Image, int, int, int, int)}. A tile provider which
+     * abandons a tile because it was cancelled should return {@code false};
+     * the tile consumer will then not regard the tile as permanently absent.
+     * The default implementation ignores the cancellation token and invokes
+     * {@link #paintTile(Image, int, int, int, int)}.
+     *
+     * @param image The image on which to paint the tile
+     * @param x The X coordinate (in tiles) of the tile to paint.
+     * @param y The Y coordinate (in tiles) of the tile to paint.
+     * @param dx The X coordinate at which to paint the tile in the image.
+     * @param dy The Y coordinate at which to paint the tile in the image.
+     * @param cancellationToken The token which indicates whether the painting
+     *                          of the tile has been cancelled.
+     * @return {@code true} if the tile was painted; {@code false} if
+     * it could not be painted for some reason or the painting was cancelled.
+     */
+    default boolean paintTile(Image image, int x, int y, int dx, int dy, CancellationToken cancellationToken) {
+        return paintTile(image, x, y, dx, dy);
+    }
+
+    /**
+     * Paint the tile at the specified tile coordinates and zoom level to an
+     * image, with the possibility for the tile consumer to cancel the painting
+     * of the tile if it is no longer needed. Will only be invoked if
+     * {@link #isPaintAtZoomSupported()} returns {@code true}. Otherwise the
+     * contract is the same as for
+     * {@link #paintTile(Image, int, int, int, int, CancellationToken)}. The
+     * default implementation ignores the cancellation token and invokes
+     * {@link #paintTile(Image, int, int, int, int, int)}.
+     *
+     * @param image The image on which to paint the tile
+     * @param x The X coordinate (in tiles at the specified zoom level) of the
+     *          tile to paint.
+     * @param y The Y coordinate (in tiles at the specified zoom level) of the
+     *          tile to paint.
+     * @param dx The X coordinate at which to paint the tile in the image.
+     * @param dy The Y coordinate at which to paint the tile in the image.
+     * @param zoom The zoom level as an exponent of two at which to paint the
+     *             tile.
+     * @param cancellationToken The token which indicates whether the painting
+     *                          of the tile has been cancelled.
+     * @return {@code true} if the tile was painted; {@code false} if
+     * it could not be painted for some reason or the painting was cancelled.
+     */
+    default boolean paintTile(Image image, int x, int y, int dx, int dy, int zoom, CancellationToken cancellationToken) {
+        return paintTile(image, x, y, dx, dy, zoom);
+    }
+
+    /**
+     * Get the width and height in tiles of the blocks of adjacent tiles which
+     * this tile provider can paint more efficiently together than one at a
+     * time, for instance because they are derived from the same larger chunk
+     * of data. The tile consumer will then collect the tiles at the current
+     * zoom level which are waiting to be painted in the same block, aligned
+     * to a multiple of the block size, and paint them with one invocation of
+     * {@link #paintTiles(Image[], int[], int[], CancellationToken[])}. The
+     * default implementation returns 1, meaning that tiles are painted one at
+     * a time.
+     *
+     * @return The width and height in tiles of the blocks of tiles which
+     * should be painted together.
+     */
+    default int getTileBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Paint a batch of tiles from the same
+     * {@link #getTileBatchSize() block} at the current zoom level, each to its
+     * own image at coordinates 0,0. Will only be invoked if
+     * {@link #getTileBatchSize()} returns a value higher than 1. Otherwise the
+     * contract for each tile is the same as for
+     * {@link #paintTile(Image, int, int, int, int, CancellationToken)}. The
+     * default implementation paints the tiles one by one using that method.
+     *
+     * @param images The images on which to paint the tiles.
+     * @param xs The X coordinates (in tiles) of the tiles to paint.
+     * @param ys The Y coordinates (in tiles) of the tiles to paint.
+     * @param cancellationTokens The tokens which indicate whether the painting
+     *                           of each tile has been cancelled.
+     * @return For each tile, {@code true} if it was painted; {@code false} if
+     * it could not be painted for some reason or the painting was cancelled.
+     */
+    default boolean[] paintTiles(Image[] images, int[] xs, int[] ys, CancellationToken[] cancellationTokens) {
+        final boolean[] painted = new boolean[images.length];
+        for (int i = 0; i < images.length; i++) {
+            if (! cancellationTokens[i].isCancelled()) {
+                painted[i] = paintTile(images[i], xs[i], ys[i], 0, 0, cancellationTokens[i]);
+            }
+        }
+        return painted;
+    }
+
+    /**
+     * Indicates whether every pixel of every tile painted by this tile
+     * provider is fully opaque. If so the tile consumer may provide images
+     * without an alpha channel on which to paint the tiles, which are cheaper
+     * to paint, and need not paint anything which is hidden underneath the
+     * tiles, such as the tiles of other tile providers or a background. The
+     * value must not change over the lifetime of the tile provider. The
+     * default implementation returns {@code false}.
+     *
+     * @return {@code true} if all tiles painted by this tile provider are
+     * fully opaque.
+     */
+    default boolean isOpaque() {
+        return false;
+    }
+
+    /**
+     * Indicates whether every pixel of a specific tile at the current zoom
+     * level, as last painted, is fully opaque, so that the tile consumer need
+     * not paint or even render anything which is hidden underneath the tile.
+     * May be invoked on a background thread, after the tile has been painted.
+     * The default implementation returns the value of {@link #isOpaque()}.
+     *
+     * @param x The X coordinate (in tiles) of the tile.
+     * @param y The Y coordinate (in tiles) of the tile.
+     * @return {@code true} if the tile is fully opaque.
+     */
+    default boolean isTileOpaque(int x, int y) {
+        return isOpaque();
+    }
 }
\ No newline at end of file
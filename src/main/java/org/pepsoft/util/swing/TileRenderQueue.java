@@ -0,0 +1,651 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The queue of tile render jobs of a {@link TiledImageViewer}, from which the {@link TileRenderScheduler} takes the
+ * jobs to execute.
+ *
+ * <p>The jobs are queued per tile provider and the providers take turns according to weighted fair queuing: of the
+ * jobs of the most urgent {@link TiledImageViewer.JobType type}, the next job is taken from the provider which has
+ * received the least service relative to its {@link TileProvider#getRenderWeight() weight}. This keeps a slow tile
+ * provider from monopolising the render threads while the tiles of cheap tile providers are waiting.
+ *
+ * <p>The jobs for the current zoom level are indexed by tile coordinates, in buckets of
+ * {@link #BUCKET_SIZE}x{@link #BUCKET_SIZE} tiles. Of the jobs of the same type, the job for the tile nearest to the
+ * {@link #setFocus(TileProvider, int, int) focus} (the centre of the view) is taken first, and of the jobs at the same
+ * distance, the one with the highest {@link TileProvider#getTilePriority(int, int) priority}. The distance is
+ * determined when the job is taken, so moving the view immediately changes the order without having to reorder the
+ * queue. The buckets are searched in rings outward from the focus, within the bounds of the occupied buckets, and the
+ * search stops at the first ring which is farther away than the best job found so far, so taking a job typically only
+ * examines the buckets near the focus. The index also allows the jobs for
+ * tiles which are no longer in or near the view to be {@link #prune(TileProvider, int, Rectangle, Rectangle, List)
+ * pruned} by examining the jobs individually only for the buckets on the edges of the view, the buckets outside the
+ * view which contain jobs for visible tiles, and the buckets which contain jobs for another zoom level, and the jobs of
+ * tile providers which {@link TileProvider#getTileBatchSize() paint tiles in batches} to be collected per block when
+ * one of them is taken.
+ *
+ * <p>The jobs for other zoom levels are not indexed and not pruned. The jobs which
+ * {@link TiledImageViewer.JobType#ZOOM_PREFETCH render tiles in advance} are ordered by priority only. The jobs which
+ * render the {@link TiledImageViewer.TileRenderJob#mipmapSource tiles from which a zoomed out tile is built} are
+ * ordered by type and priority, and are taken before the other jobs of the same type, since the job for the zoomed out
+ * tile is waiting for them. They are not pruned, because that would abandon the zoomed out tile; if it is no longer
+ * needed they are cancelled when they are run.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author pepijn
+ */
+final class TileRenderQueue {
+    /**
+     * Add a job to the queue. A job may only be added once.
+     */
+    synchronized void add(TiledImageViewer.TileRenderJob job) {
+        ProviderQueue providerQueue = providerQueues.get(job.tileProvider);
+        if (providerQueue == null) {
+            providerQueue = new ProviderQueue(job.tileProvider);
+            providerQueues.put(job.tileProvider, providerQueue);
+        }
+        if (providerQueue.size == 0) {
+            // The tile provider is becoming active again; don't let it claim the service it missed while it was idle
+            providerQueue.virtualTime = Math.max(providerQueue.virtualTime, getMinimumVirtualTime());
+        }
+        providerQueue.add(job);
+        size++;
+    }
+
+    /**
+     * Remove a job from the queue, if it is still in there.
+     *
+     * @return {@code true} if the job was removed from the queue.
+     */
+    synchronized boolean remove(TiledImageViewer.TileRenderJob job) {
+        final ProviderQueue providerQueue = providerQueues.get(job.tileProvider);
+        if ((providerQueue != null) && job.queued) {
+            providerQueue.remove(job);
+            size--;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Set the tile around which the jobs of a tile provider for the current zoom level should be executed, nearest
+     * first.
+     *
+     * @param tileProvider The tile provider.
+     * @param x The X coordinate of the tile at the current zoom level.
+     * @param y The Y coordinate of the tile at the current zoom level.
+     */
+    synchronized void setFocus(TileProvider tileProvider, int x, int y) {
+        ProviderQueue providerQueue = providerQueues.get(tileProvider);
+        if (providerQueue == null) {
+            providerQueue = new ProviderQueue(tileProvider);
+            providerQueues.put(tileProvider, providerQueue);
+        }
+        providerQueue.focusX = x;
+        providerQueue.focusY = y;
+    }
+
+    /**
+     * Remove the jobs of a tile provider for tiles which are no longer in or near the view from the queue. Jobs for
+     * tiles at other zoom levels than the current one which are not being
+     * {@link TiledImageViewer.JobType#ZOOM_PREFETCH rendered in advance}, or as
+     * {@link TiledImageViewer.TileRenderJob#mipmapSource sources} for zoomed out tiles, are removed as well.
+     *
+     * @param tileProvider The tile provider of which to prune the jobs.
+     * @param effectiveZoom The current effective zoom level of the tile provider.
+     * @param visibleTiles The tiles which are currently visible. Jobs for visible tiles outside this area are removed.
+     * @param prefetchTiles The tiles which are near enough to the view to render in advance. Jobs for prefetch tiles
+     *                      outside this area are removed.
+     * @param removedJobs The list to which to add the jobs which were removed.
+     * @return {@code true} if any jobs for visible tiles remain in the queue for the tile provider.
+     */
+    synchronized boolean prune(TileProvider tileProvider, int effectiveZoom, Rectangle visibleTiles, Rectangle prefetchTiles, List<TiledImageViewer.TileRenderJob> removedJobs) {
+        final ProviderQueue providerQueue = providerQueues.get(tileProvider);
+        if (providerQueue == null) {
+            return false;
+        }
+        final int sizeBefore = removedJobs.size();
+        final boolean visibleTilesPending = providerQueue.prune(effectiveZoom, visibleTiles, prefetchTiles, removedJobs);
+        size -= removedJobs.size() - sizeBefore;
+        return visibleTilesPending;
+    }
+
+    /**
+     * Take the next job to execute from the queue.
+     *
+     * @param eligible Which tile providers may have another job executed at the moment.
+     * @return The next job to execute, or {@code null} if there are no jobs for eligible tile providers.
+     */
+    synchronized TiledImageViewer.TileRenderJob poll(Predicate<TileProvider> eligible) {
+        ProviderQueue bestQueue = null;
+        TiledImageViewer.JobType bestType = null;
+        for (ProviderQueue providerQueue: providerQueues.values()) {
+            final TiledImageViewer.JobType type = providerQueue.getMostUrgentType();
+            if ((type == null) || (! eligible.test(providerQueue.tileProvider))) {
+                continue;
+            }
+            // Jobs of a more urgent type always go first; otherwise the tile provider which is most behind goes first
+            if ((bestQueue == null) || (type.compareTo(bestType) < 0)
+                    || ((type == bestType) && (providerQueue.virtualTime < bestQueue.virtualTime))) {
+                bestQueue = providerQueue;
+                bestType = type;
+            }
+        }
+        if (bestQueue == null) {
+            return null;
+        }
+        final TiledImageViewer.TileRenderJob job = bestQueue.poll(bestType);
+        final int batchSize = job.tileProvider.getTileBatchSize();
+        final int tileCount;
+        if ((batchSize > 1) && job.isBatchable()) {
+            job.batch = bestQueue.pollBatch(job, batchSize);
+            tileCount = job.batch.size();
+        } else {
+            tileCount = 1;
+        }
+        size -= tileCount;
+        // A batch is charged per tile, so that batching does not give a tile provider more than its share
+        bestQueue.virtualTime += (double) tileCount / Math.max(bestQueue.tileProvider.getRenderWeight(), 1);
+        return job;
+    }
+
+    /**
+     * Determine whether the queue contains any jobs for eligible tile providers.
+     *
+     * @param eligible Which tile providers may have another job executed at the moment.
+     */
+    synchronized boolean hasJobs(Predicate<TileProvider> eligible) {
+        for (ProviderQueue providerQueue: providerQueues.values()) {
+            if ((providerQueue.size > 0) && eligible.test(providerQueue.tileProvider)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get a snapshot of the jobs in the queue, in no particular order.
+     */
+    synchronized List<TiledImageViewer.TileRenderJob> getJobs() {
+        final List<TiledImageViewer.TileRenderJob> jobs = new ArrayList<>(size);
+        for (ProviderQueue providerQueue: providerQueues.values()) {
+            providerQueue.buckets.forEach((bucketX, bucketY, bucket) -> jobs.addAll(bucket.jobs));
+            jobs.addAll(providerQueue.mipmapSourceJobs);
+            jobs.addAll(providerQueue.zoomPrefetchJobs);
+        }
+        return jobs;
+    }
+
+    /**
+     * Remove all jobs of a tile provider from the queue, and forget about the tile provider.
+     *
+     * @return The jobs which were removed, in no particular order.
+     */
+    synchronized List<TiledImageViewer.TileRenderJob> removeAll(TileProvider tileProvider) {
+        final ProviderQueue providerQueue = providerQueues.remove(tileProvider);
+        if (providerQueue != null) {
+            final List<TiledImageViewer.TileRenderJob> jobs = new ArrayList<>(providerQueue.size);
+            providerQueue.buckets.forEach((bucketX, bucketY, bucket) -> jobs.addAll(bucket.jobs));
+            jobs.addAll(providerQueue.mipmapSourceJobs);
+            jobs.addAll(providerQueue.zoomPrefetchJobs);
+            size -= providerQueue.size;
+            providerQueue.clear();
+            return jobs;
+        } else {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Remove all jobs from the queue.
+     *
+     * @return The jobs which were removed, in no particular order.
+     */
+    synchronized List<TiledImageViewer.TileRenderJob> drain() {
+        final List<TiledImageViewer.TileRenderJob> jobs = getJobs();
+        clear();
+        return jobs;
+    }
+
+    /**
+     * Remove all jobs from the queue.
+     */
+    synchronized void clear() {
+        for (ProviderQueue providerQueue: providerQueues.values()) {
+            providerQueue.clear();
+        }
+        providerQueues.clear();
+        size = 0;
+    }
+
+    /**
+     * Get the lowest virtual time of the tile providers which have jobs queued.
+     */
+    private double getMinimumVirtualTime() {
+        double minimumVirtualTime = Double.MAX_VALUE;
+        for (ProviderQueue providerQueue: providerQueues.values()) {
+            if ((providerQueue.size > 0) && (providerQueue.virtualTime < minimumVirtualTime)) {
+                minimumVirtualTime = providerQueue.virtualTime;
+            }
+        }
+        return (minimumVirtualTime != Double.MAX_VALUE) ? minimumVirtualTime : 0.0;
+    }
+
+    private final Map<TileProvider, ProviderQueue> providerQueues = new HashMap<>();
+    private int size;
+
+    /**
+     * The width and height in tiles of the buckets in which the jobs are indexed by tile coordinates.
+     */
+    static final int BUCKET_SIZE = 8, BUCKET_SIZE_BITS = 3;
+
+    /**
+     * The jobs of one tile provider.
+     */
+    private static final class ProviderQueue {
+        ProviderQueue(TileProvider tileProvider) {
+            this.tileProvider = tileProvider;
+        }
+
+        void add(TiledImageViewer.TileRenderJob job) {
+            job.queued = true;
+            if (job.type == TiledImageViewer.JobType.ZOOM_PREFETCH) {
+                zoomPrefetchJobs.add(job);
+            } else if (job.mipmapSource) {
+                mipmapSourceJobs.add(job);
+            } else {
+                final int bucketX = job.x >> BUCKET_SIZE_BITS, bucketY = job.y >> BUCKET_SIZE_BITS;
+                Bucket bucket = buckets.get(bucketX, bucketY);
+                if (bucket == null) {
+                    if (buckets.isEmpty()) {
+                        minBucketX = maxBucketX = bucketX;
+                        minBucketY = maxBucketY = bucketY;
+                    } else {
+                        minBucketX = Math.min(minBucketX, bucketX);
+                        maxBucketX = Math.max(maxBucketX, bucketX);
+                        minBucketY = Math.min(minBucketY, bucketY);
+                        maxBucketY = Math.max(maxBucketY, bucketY);
+                    }
+                    bucket = new Bucket();
+                    buckets.put(bucketX, bucketY, bucket);
+                }
+                bucket.add(job);
+                typeCounts[job.type.ordinal()]++;
+            }
+            size++;
+        }
+
+        /**
+         * Get the most urgent type of job in the queue.
+         *
+         * @return The most urgent type of job in the queue, or {@code null} if the queue is empty.
+         */
+        TiledImageViewer.JobType getMostUrgentType() {
+            final TiledImageViewer.TileRenderJob mipmapSourceJob = mipmapSourceJobs.peek();
+            if ((mipmapSourceJob != null) && (mipmapSourceJob.type == TiledImageViewer.JobType.VISIBLE)) {
+                return TiledImageViewer.JobType.VISIBLE;
+            } else if (typeCounts[TiledImageViewer.JobType.VISIBLE.ordinal()] > 0) {
+                return TiledImageViewer.JobType.VISIBLE;
+            } else if ((mipmapSourceJob != null) || (typeCounts[TiledImageViewer.JobType.PREFETCH.ordinal()] > 0)) {
+                return TiledImageViewer.JobType.PREFETCH;
+            } else if (! zoomPrefetchJobs.isEmpty()) {
+                return TiledImageViewer.JobType.ZOOM_PREFETCH;
+            } else {
+                return null;
+            }
+        }
+
+        /**
+         * Take the next job of a specific type from the queue.
+         */
+        TiledImageViewer.TileRenderJob poll(TiledImageViewer.JobType type) {
+            final TiledImageViewer.TileRenderJob job;
+            if (type == TiledImageViewer.JobType.ZOOM_PREFETCH) {
+                job = zoomPrefetchJobs.poll();
+            } else if ((! mipmapSourceJobs.isEmpty()) && (mipmapSourceJobs.peek().type == type)) {
+                // A zoomed out tile is waiting for this one
+                job = mipmapSourceJobs.poll();
+            } else {
+                job = findNearestJob(type);
+                unindex(job);
+            }
+            job.queued = false;
+            size--;
+            return job;
+        }
+
+        /**
+         * Find the job of a specific type nearest to the focus, searching the buckets in rings outward from the bucket
+         * containing the focus until the rings are farther away than the best job found so far. If the rings would
+         * cover more empty space than there are buckets, the rest of the buckets are visited directly instead.
+         */
+        private TiledImageViewer.TileRenderJob findNearestJob(TiledImageViewer.JobType type) {
+            bestJob = null;
+            bestDistance = Integer.MAX_VALUE;
+            final int focusBucketX = focusX >> BUCKET_SIZE_BITS, focusBucketY = focusY >> BUCKET_SIZE_BITS;
+            // The rings beyond the bounds of the occupied buckets are empty
+            final int maxRing = Math.max(Math.max(focusBucketX - minBucketX, maxBucketX - focusBucketX),
+                    Math.max(focusBucketY - minBucketY, maxBucketY - focusBucketY));
+            final int maxCells = buckets.size();
+            int cells = 0;
+            for (int ring = 0; ring <= maxRing; ring++) {
+                // The nearest tile of a bucket in this ring is at least this far from the focus
+                if ((ring > 0) && (((ring - 1) << BUCKET_SIZE_BITS) + 1 > bestDistance)) {
+                    break;
+                }
+                if (cells > maxCells) {
+                    // The neighbourhood of the focus is sparse; visiting all buckets is cheaper
+                    buckets.forEach((bucketX, bucketY, bucket) -> visitBucket(bucketX, bucketY, bucket, type));
+                    break;
+                }
+                final int left = Math.max(focusBucketX - ring, minBucketX), right = Math.min(focusBucketX + ring, maxBucketX);
+                final int top = focusBucketY - ring, bottom = focusBucketY + ring;
+                if (top >= minBucketY) {
+                    for (int bucketX = left; bucketX <= right; bucketX++) {
+                        visitBucket(bucketX, top, type);
+                    }
+                    cells += right - left + 1;
+                }
+                if ((ring > 0) && (bottom <= maxBucketY)) {
+                    for (int bucketX = left; bucketX <= right; bucketX++) {
+                        visitBucket(bucketX, bottom, type);
+                    }
+                    cells += right - left + 1;
+                }
+                if (ring > 0) {
+                    final int innerTop = Math.max(top + 1, minBucketY), innerBottom = Math.min(bottom - 1, maxBucketY);
+                    if (focusBucketX - ring >= minBucketX) {
+                        for (int bucketY = innerTop; bucketY <= innerBottom; bucketY++) {
+                            visitBucket(focusBucketX - ring, bucketY, type);
+                        }
+                        cells += innerBottom - innerTop + 1;
+                    }
+                    if (focusBucketX + ring <= maxBucketX) {
+                        for (int bucketY = innerTop; bucketY <= innerBottom; bucketY++) {
+                            visitBucket(focusBucketX + ring, bucketY, type);
+                        }
+                        cells += innerBottom - innerTop + 1;
+                    }
+                }
+            }
+            final TiledImageViewer.TileRenderJob job = bestJob;
+            bestJob = null;
+            return job;
+        }
+
+        private void visitBucket(int bucketX, int bucketY, TiledImageViewer.JobType type) {
+            final Bucket bucket = buckets.get(bucketX, bucketY);
+            if (bucket != null) {
+                visitBucket(bucketX, bucketY, bucket, type);
+            }
+        }
+
+        /**
+         * Consider the jobs of a specific type in a bucket for {@link #findNearestJob(TiledImageViewer.JobType)},
+         * unless the whole bucket is farther away than the best job found so far.
+         */
+        private void visitBucket(int bucketX, int bucketY, Bucket bucket, TiledImageViewer.JobType type) {
+            if ((bucket.typeCounts[type.ordinal()] == 0) || (getDistance(bucketX, bucketY) > bestDistance)) {
+                return;
+            }
+            for (TiledImageViewer.TileRenderJob candidate: bucket.jobs) {
+                if (candidate.type != type) {
+                    continue;
+                }
+                final int distance = Math.max(Math.abs(candidate.x - focusX), Math.abs(candidate.y - focusY));
+                if ((distance < bestDistance) || ((distance == bestDistance) && (candidate.compareTo(bestJob) < 0))) {
+                    bestJob = candidate;
+                    bestDistance = distance;
+                }
+            }
+        }
+
+        /**
+         * Take the jobs which can be rendered together with a job which has just been taken from the queue, because
+         * they are for tiles in the same block.
+         *
+         * @return The jobs in the batch, starting with the specified job.
+         */
+        List<TiledImageViewer.TileRenderJob> pollBatch(TiledImageViewer.TileRenderJob job, int batchSize) {
+            final List<TiledImageViewer.TileRenderJob> batch = new ArrayList<>();
+            batch.add(job);
+            final int left = Math.floorDiv(job.x, batchSize) * batchSize, top = Math.floorDiv(job.y, batchSize) * batchSize;
+            final int right = left + batchSize - 1, bottom = top + batchSize - 1;
+            for (int bucketX = left >> BUCKET_SIZE_BITS; bucketX <= (right >> BUCKET_SIZE_BITS); bucketX++) {
+                for (int bucketY = top >> BUCKET_SIZE_BITS; bucketY <= (bottom >> BUCKET_SIZE_BITS); bucketY++) {
+                    final Bucket bucket = buckets.get(bucketX, bucketY);
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (Iterator<TiledImageViewer.TileRenderJob> i = bucket.jobs.iterator(); i.hasNext(); ) {
+                        final TiledImageViewer.TileRenderJob candidate = i.next();
+                        if ((candidate.x >= left) && (candidate.x <= right) && (candidate.y >= top) && (candidate.y <= bottom)
+                                && job.canBatchWith(candidate)) {
+                            i.remove();
+                            bucket.typeCounts[candidate.type.ordinal()]--;
+                            markRemoved(candidate);
+                            batch.add(candidate);
+                        }
+                    }
+                    if (bucket.jobs.isEmpty()) {
+                        buckets.remove(bucketX, bucketY);
+                    }
+                }
+            }
+            return batch;
+        }
+
+        void remove(TiledImageViewer.TileRenderJob job) {
+            if (job.type == TiledImageViewer.JobType.ZOOM_PREFETCH) {
+                // There are only ever a few of these
+                zoomPrefetchJobs.remove(job);
+            } else if (job.mipmapSource) {
+                mipmapSourceJobs.remove(job);
+            } else {
+                unindex(job);
+            }
+            job.queued = false;
+            size--;
+        }
+
+        boolean prune(int effectiveZoom, Rectangle visibleTiles, Rectangle prefetchTiles, List<TiledImageViewer.TileRenderJob> removedJobs) {
+            final boolean[] visibleTilesPending = {false};
+            buckets.removeIf((bucketX, bucketY, bucket) -> {
+                final boolean remove = pruneBucket(bucketX, bucketY, bucket, effectiveZoom, visibleTiles, prefetchTiles, removedJobs, visibleTilesPending);
+                if (! remove) {
+                    keptBucket(bucketX, bucketY);
+                }
+                return remove;
+            });
+            // The bounds of the occupied buckets have been recalculated from the kept buckets
+            minBucketX = newMinBucketX;
+            maxBucketX = newMaxBucketX;
+            minBucketY = newMinBucketY;
+            maxBucketY = newMaxBucketY;
+            newMinBucketX = newMinBucketY = Integer.MAX_VALUE;
+            newMaxBucketX = newMaxBucketY = Integer.MIN_VALUE;
+            return visibleTilesPending[0];
+        }
+
+        private void keptBucket(int bucketX, int bucketY) {
+            newMinBucketX = Math.min(newMinBucketX, bucketX);
+            newMaxBucketX = Math.max(newMaxBucketX, bucketX);
+            newMinBucketY = Math.min(newMinBucketY, bucketY);
+            newMaxBucketY = Math.max(newMaxBucketY, bucketY);
+        }
+
+        /**
+         * Prune the jobs of one bucket.
+         *
+         * @return {@code true} if the bucket is empty afterwards and should be removed.
+         */
+        private boolean pruneBucket(int bucketX, int bucketY, Bucket bucket, int effectiveZoom, Rectangle visibleTiles, Rectangle prefetchTiles, List<TiledImageViewer.TileRenderJob> removedJobs, boolean[] visibleTilesPending) {
+            final int left = bucketX << BUCKET_SIZE_BITS, top = bucketY << BUCKET_SIZE_BITS;
+            if (! prefetchTiles.intersects(left, top, BUCKET_SIZE, BUCKET_SIZE)) {
+                for (TiledImageViewer.TileRenderJob job: bucket.jobs) {
+                    markRemoved(job);
+                    removedJobs.add(job);
+                }
+                return true;
+            }
+            final boolean inView = visibleTiles.contains(left, top, BUCKET_SIZE, BUCKET_SIZE);
+            final boolean visibleJobs = bucket.typeCounts[TiledImageViewer.JobType.VISIBLE.ordinal()] > 0;
+            if ((bucket.effectiveZoom == effectiveZoom) && (! bucket.mixedZoom)
+                    && (inView || ((! visibleJobs) && prefetchTiles.contains(left, top, BUCKET_SIZE, BUCKET_SIZE)))) {
+                // All jobs in the bucket are still needed
+                visibleTilesPending[0] |= visibleJobs;
+                return false;
+            }
+            for (Iterator<TiledImageViewer.TileRenderJob> i = bucket.jobs.iterator(); i.hasNext(); ) {
+                final TiledImageViewer.TileRenderJob job = i.next();
+                final boolean keep;
+                if (job.effectiveZoom != effectiveZoom) {
+                    keep = false;
+                } else if (job.type == TiledImageViewer.JobType.VISIBLE) {
+                    keep = inView || visibleTiles.contains(job.x, job.y);
+                    visibleTilesPending[0] |= keep;
+                } else {
+                    keep = prefetchTiles.contains(job.x, job.y);
+                }
+                if (! keep) {
+                    i.remove();
+                    bucket.typeCounts[job.type.ordinal()]--;
+                    markRemoved(job);
+                    removedJobs.add(job);
+                }
+            }
+            // The remaining jobs are all for the current zoom level
+            bucket.effectiveZoom = effectiveZoom;
+            bucket.mixedZoom = false;
+            return bucket.jobs.isEmpty();
+        }
+
+        void clear() {
+            buckets.forEach((bucketX, bucketY, bucket) -> bucket.jobs.forEach(job -> job.queued = false));
+            mipmapSourceJobs.forEach(job -> job.queued = false);
+            zoomPrefetchJobs.forEach(job -> job.queued = false);
+            buckets.clear();
+            mipmapSourceJobs.clear();
+            zoomPrefetchJobs.clear();
+            Arrays.fill(typeCounts, 0);
+            size = 0;
+        }
+
+        /**
+         * Get the distance in tiles (in the Chebyshev metric, so that the distance describes concentric rings around
+         * the focus) from the focus to the nearest tile of a bucket.
+         */
+        private int getDistance(int bucketX, int bucketY) {
+            final int left = bucketX << BUCKET_SIZE_BITS, top = bucketY << BUCKET_SIZE_BITS;
+            final int dx = Math.max(Math.max(left - focusX, focusX - (left + BUCKET_SIZE - 1)), 0);
+            final int dy = Math.max(Math.max(top - focusY, focusY - (top + BUCKET_SIZE - 1)), 0);
+            return Math.max(dx, dy);
+        }
+
+        private void unindex(TiledImageViewer.TileRenderJob job) {
+            final int bucketX = job.x >> BUCKET_SIZE_BITS, bucketY = job.y >> BUCKET_SIZE_BITS;
+            final Bucket bucket = buckets.get(bucketX, bucketY);
+            bucket.remove(job);
+            if (bucket.jobs.isEmpty()) {
+                buckets.remove(bucketX, bucketY);
+            }
+            typeCounts[job.type.ordinal()]--;
+        }
+
+        private void markRemoved(TiledImageViewer.TileRenderJob job) {
+            job.queued = false;
+            typeCounts[job.type.ordinal()]--;
+            size--;
+        }
+
+        final TileProvider tileProvider;
+        /**
+         * The jobs for the current zoom level, indexed by the tile coordinates divided by {@link #BUCKET_SIZE}.
+         */
+        final TileMap<Bucket> buckets = new TileMap<>();
+        /**
+         * The jobs for the tiles of finer zoom levels from which zoomed out tiles are built, in order of type and
+         * priority.
+         */
+        final PriorityQueue<TiledImageViewer.TileRenderJob> mipmapSourceJobs = new PriorityQueue<>();
+        /**
+         * The jobs for other zoom levels, in order of priority.
+         */
+        final PriorityQueue<TiledImageViewer.TileRenderJob> zoomPrefetchJobs = new PriorityQueue<>();
+        /**
+         * The number of jobs in the buckets per type.
+         */
+        final int[] typeCounts = new int[TiledImageViewer.JobType.values().length];
+        /**
+         * The number of jobs in the queue.
+         */
+        int size;
+        /**
+         * The tile around which the jobs for the current zoom level should be executed.
+         */
+        int focusX, focusY;
+        /**
+         * The bounds of the occupied buckets, if there are any. Only grown when jobs are added, so they may be larger
+         * than necessary until the next time the jobs are pruned.
+         */
+        int minBucketX, maxBucketX, minBucketY, maxBucketY;
+        /**
+         * The amount of service the tile provider has received, weighted by its render weight.
+         */
+        double virtualTime;
+        /**
+         * Scratch space for {@link #poll(TiledImageViewer.JobType)}.
+         */
+        private TiledImageViewer.TileRenderJob bestJob;
+        private int bestDistance;
+        /**
+         * Scratch space for {@link #prune(int, Rectangle, Rectangle, List)}.
+         */
+        private int newMinBucketX = Integer.MAX_VALUE, newMaxBucketX = Integer.MIN_VALUE, newMinBucketY = Integer.MAX_VALUE, newMaxBucketY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * The jobs for the tiles in one {@link #BUCKET_SIZE}x{@link #BUCKET_SIZE} area.
+     */
+    private static final class Bucket {
+        void add(TiledImageViewer.TileRenderJob job) {
+            if (jobs.isEmpty()) {
+                effectiveZoom = job.effectiveZoom;
+                mixedZoom = false;
+            } else if (job.effectiveZoom != effectiveZoom) {
+                mixedZoom = true;
+            }
+            jobs.add(job);
+            typeCounts[job.type.ordinal()]++;
+        }
+
+        void remove(TiledImageViewer.TileRenderJob job) {
+            jobs.remove(job);
+            typeCounts[job.type.ordinal()]--;
+        }
+
+        final List<TiledImageViewer.TileRenderJob> jobs = new ArrayList<>();
+        final int[] typeCounts = new int[TiledImageViewer.JobType.values().length];
+        /**
+         * The effective zoom level of the jobs in the bucket, unless {@link #mixedZoom} is set, in which case the
+         * jobs are for more than one zoom level. This allows buckets which are completely in the view to be kept when
+         * {@link ProviderQueue#prune(int, Rectangle, Rectangle, List) pruning} without examining their jobs.
+         */
+        int effectiveZoom;
+        boolean mixedZoom;
+    }
+}
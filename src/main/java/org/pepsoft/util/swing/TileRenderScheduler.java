@@ -0,0 +1,394 @@
+package org.pepsoft.util.swing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.pepsoft.util.swing.TiledImageViewer.ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS;
+import static org.pepsoft.util.swing.TiledImageViewer.ADVANCED_SETTING_MAX_TILE_RENDER_THREADS;
+
+/**
+ * A pool of background threads which executes the tile render jobs of one or more {@link TiledImageViewer}s, so that
+ * the viewers do not compete with each other for the processors with a pool of threads each. By default all viewers
+ * share the {@link #getDefault() default scheduler}.
+ *
+ * <p>Each viewer registers its own render queue, in which its jobs are ordered by priority. The threads take the jobs
+ * from the queues of the viewers which are showing on the screen before those of viewers which are not, and take turns
+ * between the viewers, so that each viewer gets a fair share of the threads. The number of tiles of each tile provider
+ * being rendered concurrently is limited to one for tile providers which are not
+ * {@link TileProvider#isThreadSafe() thread-safe}, or otherwise to the
+ * {@link TileProvider#getMaxConcurrentRenders() maximum} the tile provider indicates, across all viewers.
+ *
+ * <p>The number of threads is limited by the {@link TiledImageViewer#ADVANCED_SETTING_MAX_TILE_RENDER_THREADS}
+ * advanced setting, or by {@link TiledImageViewer#ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS} while any registered
+ * viewer has tile providers which are rendered with the {@link TileRenderStrategy#IO_BOUND} strategy. In the latter
+ * case the number of tiles being painted concurrently is still limited by the former. The threads are started when
+ * needed and stop when they have been idle for a while.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author pepijn
+ */
+public final class TileRenderScheduler {
+    /**
+     * Create a new tile render scheduler, with the numbers of threads configured by the
+     * {@link TiledImageViewer#ADVANCED_SETTING_MAX_TILE_RENDER_THREADS} and
+     * {@link TiledImageViewer#ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS} advanced settings.
+     */
+    public TileRenderScheduler() {
+        final String maxThreads = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.key);
+        if (maxThreads != null) {
+            threads = ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.toValue(maxThreads);
+        } else {
+            threads = Math.min(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.defaultValue);
+        }
+        final String ioBoundThreads = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS.key);
+        this.ioBoundThreads = Math.max((ioBoundThreads != null) ? ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS.toValue(ioBoundThreads) : ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS.defaultValue, threads);
+        paintPermits = new Semaphore(threads);
+    }
+
+    /**
+     * Create a new tile render scheduler.
+     *
+     * @param threads The maximum number of threads to use for rendering tiles, and the maximum number of tiles to paint
+     *                concurrently.
+     * @param ioBoundThreads The maximum number of threads to use for rendering tiles while any registered viewer has
+     *                       tile providers which are rendered with the {@link TileRenderStrategy#IO_BOUND} strategy.
+     */
+    public TileRenderScheduler(int threads, int ioBoundThreads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads " + threads);
+        }
+        this.threads = threads;
+        this.ioBoundThreads = Math.max(ioBoundThreads, threads);
+        paintPermits = new Semaphore(threads);
+    }
+
+    /**
+     * Get the maximum number of tiles which are painted concurrently.
+     *
+     * @return The maximum number of tiles which are painted concurrently.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the number of threads which are currently running.
+     *
+     * @return The number of threads which are currently running.
+     */
+    public int getPoolSize() {
+        synchronized (lock) {
+            return workerCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "TileRenderScheduler{threads=" + threads + ", ioBoundThreads=" + ioBoundThreads + ", workers="
+                    + workerCount + ", clients=" + clients.size() + '}';
+        }
+    }
+
+    /**
+     * Get the scheduler which is shared by all viewers by default.
+     *
+     * @return The scheduler which is shared by all viewers by default.
+     */
+    public static TileRenderScheduler getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Register a render queue. Jobs are submitted by adding them to the queue through the returned client.
+     */
+    Client register(TileRenderQueue queue, boolean showing) {
+        final Client client = new Client(queue, showing);
+        synchronized (lock) {
+            clients.add(client);
+        }
+        return client;
+    }
+
+    /**
+     * Get the number of threads needed for the currently registered clients.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while holding {@link #lock}.
+     */
+    private int getMaxWorkers() {
+        for (Client client: clients) {
+            if (client.ioBound) {
+                return ioBoundThreads;
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Wake up an idle thread or start a new one, if there is room, to take a newly submitted job.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while holding {@link #lock}.
+     */
+    private void wakeWorker() {
+        if (idleWorkers > 0) {
+            lock.notify();
+        } else if (workerCount < getMaxWorkers()) {
+            // The threads beyond the first few are only needed for waiting on I/O, so make them virtual threads if the
+            // Java runtime supports them
+            final Thread thread = ((VIRTUAL_THREAD_FACTORY != null) && (workerCount >= threads))
+                    ? VIRTUAL_THREAD_FACTORY.newThread(this::work)
+                    : new Thread(this::work, "Tile renderer " + threadSeq.getAndIncrement());
+            thread.setDaemon(true);
+            workerCount++;
+            thread.start();
+        }
+    }
+
+    /**
+     * Get the next job to execute, from the showing clients before the others, taking turns between them.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while holding {@link #lock}.
+     *
+     * @return The next job to execute, or {@code null} if there are no jobs.
+     */
+    private TiledImageViewer.TileRenderJob nextJob() {
+        final int clientCount = clients.size();
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < clientCount; i++) {
+                final int index = (nextClient + i) % clientCount;
+                final Client client = clients.get(index);
+                if (client.showing == (pass == 0)) {
+                    final TiledImageViewer.TileRenderJob job = client.queue.poll(this::canRun);
+                    if (job != null) {
+                        nextClient = index + 1;
+                        return job;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine whether any client has jobs waiting.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while holding {@link #lock}.
+     */
+    private boolean hasJobs() {
+        for (Client client: clients) {
+            if (client.queue.hasJobs(this::canRun)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether another tile of a tile provider may be rendered at the moment.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while holding {@link #lock}.
+     */
+    private boolean canRun(TileProvider tileProvider) {
+        final int maxConcurrentRenders = tileProvider.isThreadSafe() ? tileProvider.getMaxConcurrentRenders() : 1;
+        if (maxConcurrentRenders <= 0) {
+            return true;
+        }
+        final int[] running = runningJobs.get(tileProvider);
+        return (running == null) || (running[0] < maxConcurrentRenders);
+    }
+
+    /**
+     * The main loop of the threads.
+     */
+    private void work() {
+        while (true) {
+            final TiledImageViewer.TileRenderJob job;
+            synchronized (lock) {
+                final long deadline = System.currentTimeMillis() + KEEP_ALIVE;
+                TiledImageViewer.TileRenderJob nextJob = nextJob();
+                while (nextJob == null) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if ((workerCount > getMaxWorkers()) || (remaining <= 0)) {
+                        // There are too many threads, or this one has been idle for too long; stop it
+                        workerCount--;
+                        return;
+                    }
+                    idleWorkers++;
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        workerCount--;
+                        return;
+                    } finally {
+                        idleWorkers--;
+                    }
+                    nextJob = nextJob();
+                }
+                job = nextJob;
+                runningJobs.computeIfAbsent(job.tileProvider, key -> new int[1])[0]++;
+                // Several jobs may have been submitted while only one thread was woken up, so pass it on
+                if (hasJobs()) {
+                    wakeWorker();
+                }
+            }
+            try {
+                job.run();
+            } catch (Throwable e) {
+                logger.error(e.getClass().getSimpleName() + " while rendering tile (message: " + e.getMessage() + ")", e);
+            } finally {
+                synchronized (lock) {
+                    final int[] running = runningJobs.get(job.tileProvider);
+                    if (--running[0] == 0) {
+                        runningJobs.remove(job.tileProvider);
+                    }
+                    // Jobs of the tile provider may have been waiting for this one to finish
+                    if (hasJobs()) {
+                        wakeWorker();
+                    }
+                }
+            }
+        }
+    }
+
+    private final int threads, ioBoundThreads;
+    /**
+     * Limits the number of tiles being painted concurrently to {@link #threads}, regardless of the number of threads.
+     */
+    final Semaphore paintPermits;
+    private final Object lock = new Object();
+    /**
+     * The registered clients. Guarded by {@link #lock}.
+     */
+    private final List<Client> clients = new ArrayList<>();
+    /**
+     * The index of the client which should be considered first for the next job. Guarded by {@link #lock}.
+     */
+    private int nextClient;
+    /**
+     * The number of running threads and the number of those which are waiting for a job. Guarded by {@link #lock}.
+     */
+    private int workerCount, idleWorkers;
+    /**
+     * The number of jobs being executed per tile provider. Guarded by {@link #lock}.
+     */
+    private final Map<TileProvider, int[]> runningJobs = new HashMap<>();
+
+    /**
+     * The time in ms after which an idle thread stops.
+     */
+    private static final long KEEP_ALIVE = 60000;
+    /**
+     * A factory for virtual threads, or {@code null} if the Java runtime does not support them.
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY;
+    /**
+     * The sequence number of the next platform render thread, shared by all schedulers.
+     */
+    private static final AtomicInteger threadSeq = new AtomicInteger(1);
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TileRenderScheduler.class);
+
+    static {
+        // Virtual threads are only available from Java 21
+        ThreadFactory virtualThreadFactory;
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtualThreadFactory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads not supported; using platform threads for I/O bound tile rendering");
+            virtualThreadFactory = null;
+        }
+        VIRTUAL_THREAD_FACTORY = virtualThreadFactory;
+    }
+
+    /**
+     * The registration of a render queue with a scheduler.
+     */
+    final class Client {
+        private Client(TileRenderQueue queue, boolean showing) {
+            this.queue = queue;
+            this.showing = showing;
+        }
+
+        /**
+         * Submit a job by adding it to the render queue.
+         *
+         * @throws RejectedExecutionException If the client has been unregistered.
+         */
+        void execute(TiledImageViewer.TileRenderJob job) {
+            if (unregistered) {
+                throw new RejectedExecutionException("Client unregistered");
+            }
+            queue.add(job);
+            synchronized (lock) {
+                wakeWorker();
+            }
+        }
+
+        /**
+         * Get the scheduler with which this client is registered.
+         */
+        TileRenderScheduler getScheduler() {
+            return TileRenderScheduler.this;
+        }
+
+        /**
+         * Set whether the viewer of this client is showing on the screen, in which case its jobs take precedence over
+         * those of viewers which are not.
+         */
+        void setShowing(boolean showing) {
+            this.showing = showing;
+        }
+
+        /**
+         * Set whether the viewer of this client has tile providers which are rendered with the
+         * {@link TileRenderStrategy#IO_BOUND} strategy, in which case more threads are started.
+         */
+        void setIoBound(boolean ioBound) {
+            synchronized (lock) {
+                if (ioBound != this.ioBound) {
+                    this.ioBound = ioBound;
+                    if (ioBound) {
+                        // Start the additional threads for the queued jobs
+                        for (int i = queue.size(); (i > 0) && (workerCount < getMaxWorkers()); i--) {
+                            wakeWorker();
+                        }
+                    } else {
+                        // Let the surplus threads stop
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stop taking jobs from the render queue. Jobs which are already being executed are not interrupted, and jobs
+         * which are still in the queue are left there.
+         */
+        void unregister() {
+            synchronized (lock) {
+                unregistered = true;
+                clients.remove(this);
+                nextClient = 0;
+                lock.notifyAll();
+            }
+        }
+
+        private final TileRenderQueue queue;
+        private volatile boolean showing, unregistered;
+        /**
+         * Guarded by {@link #lock}.
+         */
+        private boolean ioBound;
+    }
+
+    private static final class DefaultHolder {
+        static final TileRenderScheduler INSTANCE = new TileRenderScheduler();
+    }
+}
@@ -0,0 +1,27 @@
+package org.pepsoft.util.swing;
+
+/**
+ * The ways in which a {@link TiledImageViewer} can execute the rendering of
+ * the tiles of a {@link TileProvider}.
+ *
+ * @author pepijn
+ */
+public enum TileRenderStrategy {
+    /**
+     * Render the tiles on a fixed number of threads, sized according to the
+     * number of processors. Suitable for tile providers which only use the CPU
+     * to paint their tiles.
+     */
+    FIXED_POOL,
+
+    /**
+     * Render the tiles on a larger number of threads (virtual threads, when
+     * the Java runtime supports them), so that tile providers which block on
+     * I/O while preparing their tiles do not leave the processors idle. The
+     * actual painting of the tiles is still limited to the same number of
+     * concurrent threads as for {@link #FIXED_POOL}. Tile providers must
+     * perform their I/O in {@link TileProvider#prepareTile(int, int,
+     * CancellationToken)} to benefit from this.
+     */
+    IO_BOUND
+}
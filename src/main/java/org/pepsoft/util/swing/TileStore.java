@@ -0,0 +1,151 @@
+package org.pepsoft.util.swing;
+
+import java.awt.*;
+import java.lang.ref.Reference;
+
+/**
+ * The fresh and stale tile caches of one tile provider of a {@link TiledImageViewer}, partitioned into stripes by tile
+ * coordinates. Each stripe is guarded by its own monitor, so that the event dispatch thread and the tile rendering
+ * threads only contend with each other when they access tiles in the same stripe.
+ *
+ * <p>The tiles are distributed over the stripes such that each 4x4 block of adjacent tiles is spread over all
+ * stripes, since the tiles being rendered at the same time are typically close together.
+ *
+ * @author pepijn
+ */
+final class TileStore {
+    TileStore() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Create a copy of a tile store.
+     *
+     * @param tileStore The tile store to copy.
+     */
+    TileStore(TileStore tileStore) {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            final Stripe stripe = tileStore.stripes[i];
+            synchronized (stripe) {
+                stripes[i] = new Stripe(stripe);
+            }
+        }
+    }
+
+    /**
+     * Get the stripe containing a specific tile. All access to the tile must be performed while holding the monitor of
+     * the stripe.
+     *
+     * @param x The X coordinate of the tile.
+     * @param y The Y coordinate of the tile.
+     * @return The stripe containing the tile.
+     */
+    Stripe getStripe(int x, int y) {
+        return stripes[((y & 3) << 2) | (x & 3)];
+    }
+
+    /**
+     * Get the stripe with a specific index. Stripes with the same index in different tile stores contain the same
+     * tile coordinates.
+     *
+     * @param index The index of the stripe.
+     * @return The stripe with the specified index.
+     */
+    Stripe getStripe(int index) {
+        return stripes[index];
+    }
+
+    /**
+     * Mark this tile store as no longer in use, so that tile render jobs which
+     * are still running for it know that their results are obsolete.
+     */
+    void retire() {
+        generation++;
+    }
+
+    /**
+     * Get the generation of this tile store, which changes when the tile store
+     * is {@link #retire() retired}.
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Record that a tile has been rendered into this tile store in advance by
+     * a zoom prefetch job.
+     */
+    void markZoomPrefetched() {
+        zoomPrefetched = true;
+    }
+
+    /**
+     * Indicates whether tiles have been rendered into this tile store in
+     * advance by zoom prefetch jobs since the last time this method was
+     * invoked, and resets the indication.
+     */
+    boolean takeZoomPrefetched() {
+        final boolean zoomPrefetched = this.zoomPrefetched;
+        this.zoomPrefetched = false;
+        return zoomPrefetched;
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+    private volatile int generation;
+    private volatile boolean zoomPrefetched;
+
+    static final int STRIPE_COUNT = 16;
+
+    static final class Stripe {
+        Stripe() {
+            tiles = new TileMap<>();
+            dirtyTiles = new TileMap<>();
+            prefetchJobs = new TileMap<>();
+            waitingJobs = new TileMap<>();
+        }
+
+        /**
+         * Create a copy of a stripe for another viewer. The fresh tiles are copied as stale tiles, since their cache
+         * entries belong to the viewer which owns the original, and releasing a shared entry in one viewer would
+         * demote the tile in the other one as well. The markers for tiles which are being rendered, the pending
+         * prefetch jobs and the waiting jobs are not copied, since they belong to the render queue of the viewer which
+         * owns the original.
+         */
+        Stripe(Stripe stripe) {
+            final TileMap<TileCache.Entry> tiles = new TileMap<>();
+            final TileMap<Reference<? extends Image>> dirtyTiles = new TileMap<>(stripe.dirtyTiles);
+            stripe.tiles.forEach((x, y, tileEntry) -> {
+                if (! tileEntry.isSentinel()) {
+                    dirtyTiles.put(x, y, tileEntry.toReference());
+                } else if (tileEntry.getImage() != null) {
+                    // The tile is not present
+                    tiles.put(x, y, tileEntry);
+                }
+            });
+            this.tiles = tiles;
+            this.dirtyTiles = dirtyTiles;
+            prefetchJobs = new TileMap<>();
+            waitingJobs = new TileMap<>();
+        }
+
+        /**
+         * The fresh tiles, including the sentinels for tiles which are being rendered and tiles which are not present.
+         */
+        final TileMap<TileCache.Entry> tiles;
+        /**
+         * The stale tiles, to be painted while the fresh tiles are being rendered.
+         */
+        final TileMap<Reference<? extends Image>> dirtyTiles;
+        /**
+         * The queued prefetch jobs, so that they can be promoted when the tile becomes visible.
+         */
+        final TileMap<TiledImageViewer.TileRenderJob> prefetchJobs;
+        /**
+         * The deferred jobs for zoomed out tiles which are waiting for tiles of this store to be rendered, by the
+         * coordinates of the tile for which they are waiting.
+         */
+        final TileMap<TiledImageViewer.TileRenderJob> waitingJobs;
+    }
+}
@@ -9,15 +9,18 @@ import org.pepsoft.util.IntegerAttributeKey;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.Rectangle2D;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.VolatileImage;
+import java.awt.image.WritableRaster;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.pepsoft.util.GUIUtils.getUIScale;
 
@@ -73,11 +76,28 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         this.leftClickDrags = leftClickDrags;
         this.paintCentre = paintCentre;
         this.tileProviderZoomCutoff = tileProviderZoomCutoff;
-        String maxThreads = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.key);
-        if (maxThreads != null) {
-            threads = ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.toValue(maxThreads);
+        String tileCacheSize = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_TILE_CACHE_SIZE.key);
+        cache = new TileCache(((tileCacheSize != null) ? ADVANCED_SETTING_TILE_CACHE_SIZE.toValue(tileCacheSize) : ADVANCED_SETTING_TILE_CACHE_SIZE.defaultValue) * 1024L * 1024L);
+        String prefetchRing = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_TILE_PREFETCH_RING.key);
+        this.prefetchRing = (prefetchRing != null) ? ADVANCED_SETTING_TILE_PREFETCH_RING.toValue(prefetchRing) : ADVANCED_SETTING_TILE_PREFETCH_RING.defaultValue;
+        String zoomPrefetchThreads = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_ZOOM_PREFETCH_THREADS.key);
+        this.zoomPrefetchThreads = (zoomPrefetchThreads != null) ? ADVANCED_SETTING_ZOOM_PREFETCH_THREADS.toValue(zoomPrefetchThreads) : ADVANCED_SETTING_ZOOM_PREFETCH_THREADS.defaultValue;
+        String zoomPrefetchCacheSize = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_ZOOM_PREFETCH_CACHE_SIZE.key);
+        zoomPrefetchMaxBytes = ((zoomPrefetchCacheSize != null) ? ADVANCED_SETTING_ZOOM_PREFETCH_CACHE_SIZE.toValue(zoomPrefetchCacheSize) : ADVANCED_SETTING_ZOOM_PREFETCH_CACHE_SIZE.defaultValue) * 1024L * 1024L;
+        String retainedZoomLevels = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_RETAINED_ZOOM_LEVELS.key);
+        this.retainedZoomLevels = (retainedZoomLevels != null) ? ADVANCED_SETTING_RETAINED_ZOOM_LEVELS.toValue(retainedZoomLevels) : ADVANCED_SETTING_RETAINED_ZOOM_LEVELS.defaultValue;
+        String tileAtlasPageSize = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_TILE_ATLAS_PAGE_SIZE.key);
+        final int atlasPageSize = (tileAtlasPageSize != null) ? ADVANCED_SETTING_TILE_ATLAS_PAGE_SIZE.toValue(tileAtlasPageSize) : ADVANCED_SETTING_TILE_ATLAS_PAGE_SIZE.defaultValue;
+        atlas = (atlasPageSize > 0) ? new TileAtlas(atlasPageSize) : null;
+        String tileImagePoolSize = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_TILE_IMAGE_POOL_SIZE.key);
+        imagePool = new TileImagePool((tileImagePoolSize != null) ? ADVANCED_SETTING_TILE_IMAGE_POOL_SIZE.toValue(tileImagePoolSize) : ADVANCED_SETTING_TILE_IMAGE_POOL_SIZE.defaultValue);
+        String tileRepaintRate = System.getProperty("org.pepsoft.worldpainter." + ADVANCED_SETTING_TILE_REPAINT_RATE.key);
+        final int repaintRate = (tileRepaintRate != null) ? ADVANCED_SETTING_TILE_REPAINT_RATE.toValue(tileRepaintRate) : ADVANCED_SETTING_TILE_REPAINT_RATE.defaultValue;
+        if (repaintRate > 0) {
+            tileRepaintTimer = new javax.swing.Timer(Math.max(1000 / repaintRate, 1), event -> repaintPendingTiles());
+            tileRepaintTimer.setCoalesce(true);
         } else {
-            threads = Math.min(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), ADVANCED_SETTING_MAX_TILE_RENDER_THREADS.defaultValue);
+            tileRepaintTimer = null;
         }
         addMouseListener(this);
         addMouseMotionListener(this);
@@ -126,35 +146,31 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * @param tileProvider The tile provider to place at the specified layer.
      */
     public void setTileProvider(int layer, TileProvider tileProvider) {
+        final int tileSize = tileProvider.getTileSize();
+        if ((tileSize <= 0) || (Integer.bitCount(tileSize) != 1)) {
+            throw new IllegalArgumentException("Tile size " + tileSize + " is not a power of two");
+        }
+        // The tiles for adjacent zoom levels are planned for the current tile
+        // providers
+        cancelZoomPrefetch();
+        java.util.List<TileRenderJob> removedJobs = Collections.emptyList();
         synchronized (TILE_CACHE_LOCK) {
             final TileProvider oldTileProvider = tileProviders.remove(layer);
             Integer zoom = null;
-            Map<Point, Reference<? extends Image>> dirtyTileCache = new HashMap<>();
+            final TileStore tileStore = new TileStore();
             if (oldTileProvider != null) {
                 zoom = tileProviderZoom.remove(oldTileProvider);
                 oldTileProvider.removeTileListener(this);
-                dirtyTileCache = dirtyTileCaches.remove(oldTileProvider);
-                Map<Point, Reference<? extends Image>> tileCache = tileCaches.remove(oldTileProvider);
-                // Add all live tile images from the tile cache to the dirty tile cache, for use as dirty tile for the
-                // new tile provider
-                for (Map.Entry<Point, Reference<? extends Image>> entry: tileCache.entrySet()) {
-                    Reference<? extends Image> tileImageRef = entry.getValue();
-                    if (tileImageRef != RENDERING) {
-                        Image tileImage = tileImageRef.get();
-                        if (tileImage != null) {
-                            dirtyTileCache.put(entry.getKey(), tileImageRef);
-                        }
-                    }
-                }
+                releaseZoomLevels(oldTileProvider);
+                // Add all dirty tile images and live tile images from the old tile provider's tile caches to the dirty
+                // tile cache, for use as dirty tile for the new tile provider, provided that its tiles are the same
+                // size
+                releaseTiles(tileStores.remove(oldTileProvider), (oldTileProvider.getTileSize() == tileSize) ? tileStore : null, true);
                 // We're not completely sure how, but sometimes we reach here without the renderers having been started,
                 // so check whether there actually is a queue
                 if (queue != null) {
                     // Prune the queue of jobs related to this tile provider
-                    for (Iterator<Runnable> i = queue.iterator(); i.hasNext(); ) {
-                        if (((TileRenderJob) i.next()).tileProvider == oldTileProvider) {
-                            i.remove();
-                        }
-                    }
+                    removedJobs = queue.removeAll(oldTileProvider);
                 }
             }
             
@@ -170,13 +186,14 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
             if (zoom != null) {
                 tileProviderZoom.put(tileProvider, zoom);
             }
-            tileCaches.put(tileProvider, new HashMap<>());
-            dirtyTileCaches.put(tileProvider, dirtyTileCache);
+            tileStores.put(tileProvider, tileStore);
 
             // We're not completely sure how, but sometimes we reach here without the renderers having been started, so
             // start them now (if we're visible of course)
             startRenderersIfApplicable();
+            updateIoBound();
         }
+        removedJobs.forEach(this::clearRenderingFlag);
         fireViewChangedEvent();
         repaint();
     }
@@ -188,27 +205,28 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      */
     public void removeTileProvider(int layer) {
         boolean providerRemoved = false;
+        // The tiles for adjacent zoom levels are planned for the current tile
+        // providers
+        cancelZoomPrefetch();
+        java.util.List<TileRenderJob> removedJobs = Collections.emptyList();
         synchronized (TILE_CACHE_LOCK) {
             final TileProvider tileProvider = tileProviders.remove(layer);
             if (tileProvider != null) {
                 tileProviderZoom.remove(tileProvider);
                 tileProvider.removeTileListener(this);
-                tileCaches.remove(tileProvider);
-                dirtyTileCaches.remove(tileProvider);
+                releaseTiles(tileStores.remove(tileProvider), null, false);
+                releaseZoomLevels(tileProvider);
                 // We're not completely sure how, but sometimes we reach here
                 // without the renderers having been started, so check whether there
                 // actually is a queue
                 if (queue != null) {
                     // Prune the queue of jobs related to this tile provider
-                    for (Iterator<Runnable> i = queue.iterator(); i.hasNext(); ) {
-                        if (((TileRenderJob) i.next()).tileProvider == tileProvider) {
-                            i.remove();
-                        }
-                    }
+                    removedJobs = queue.removeAll(tileProvider);
                 }
                 providerRemoved = true;
             }
         }
+        removedJobs.forEach(this::clearRenderingFlag);
         if (providerRemoved) {
             fireViewChangedEvent();
             repaint();
@@ -219,6 +237,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * Remove all tile providers.
      */
     public void removeAllTileProviders() {
+        cancelZoomPrefetch();
         synchronized (TILE_CACHE_LOCK) {
             for (TileProvider tileProvider: tileProviders.values()) {
                 tileProvider.removeTileListener(this);
@@ -228,8 +247,10 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
             if (queue != null) {
                 queue.clear();
             }
-            tileCaches.clear();
-            dirtyTileCaches.clear();
+            tileStores.values().forEach(tileStore -> releaseTiles(tileStore, null, false));
+            tileStores.clear();
+            zoomLevelStores.values().forEach(levels -> levels.values().forEach(tileStore -> releaseTiles(tileStore, null, false)));
+            zoomLevelStores.clear();
         }
         fireViewChangedEvent();
         repaint();
@@ -279,7 +300,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         for (TileProvider tileProvider: tileProviders.values()) {
             Rectangle providerExtent = tileProvider.getExtent();
             if (providerExtent != null) {
-                providerExtent = getTileBounds(providerExtent.x, providerExtent.y, providerExtent.width, providerExtent.height, zoom);
+                providerExtent = getTileBounds(tileProvider, providerExtent.x, providerExtent.y, providerExtent.width, providerExtent.height, zoom);
                 if (extent == null) {
                     extent = providerExtent;
                 } else {
@@ -338,20 +359,32 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     public void setZoom(int zoom, int locusX, int locusY) {
         // TODO: implement zoom locus support
         if (zoom != this.zoom) {
-            int dZoom = zoom - this.zoom;
+            final int oldZoom = this.zoom;
+            int dZoom = zoom - oldZoom;
             this.zoom = zoom;
-            if (queue != null) {
-                queue.clear();
-            }
+            cancelAllJobs();
+            boolean levelChanged = false, prefetched = false;
             synchronized (TILE_CACHE_LOCK) {
                 for (TileProvider tileProvider: tileProviders.values()) {
+                    final int oldRenderZoom = getRenderZoom(tileProvider, oldZoom), renderZoom = getRenderZoom(tileProvider, zoom);
                     if (tileProvider.isZoomSupported()) {
                         // Only use the tile provider's own zoom support for
                         // zooming out:
-                        tileProvider.setZoom(((zoom + tileProviderZoom.getOrDefault(tileProvider, 0)) <= tileProviderZoomCutoff) ? (zoom + tileProviderZoom.getOrDefault(tileProvider, 0)) : tileProviderZoomCutoff);
+                        tileProvider.setZoom(renderZoom);
+                    }
+                    if (renderZoom != oldRenderZoom) {
+                        levelChanged = true;
+                        prefetched |= switchZoomLevel(tileProvider, oldRenderZoom, renderZoom);
                     }
-                    dirtyTileCaches.put(tileProvider, new HashMap<>());
-                    tileCaches.put(tileProvider, new HashMap<>());
+                    // Otherwise the tiles are rendered the same at the new zoom
+                    // level, only scaled differently, so they can be kept
+                }
+            }
+            if (zoomPrefetch && levelChanged) {
+                if (prefetched) {
+                    zoomPrefetchHits.increment();
+                } else {
+                    zoomPrefetchMisses.increment();
                 }
             }
             // Adjust view location, since it is in unzoomed coordinates
@@ -469,10 +502,11 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
             y <<= zoom;
         }
         if ((viewX != x) || (viewY != y)) {
+            final int dx = x - viewX, dy = y - viewY;
             viewX = x;
             viewY = y;
             fireViewChangedEvent();
-            repaint();
+            scrollView(dx, dy);
         }
     }
 
@@ -504,8 +538,9 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         if ((dx != 0) || (dy != 0)) {
             viewX += dx;
             viewY += dy;
+            recordPan(dx, dy);
             fireViewChangedEvent();
-            repaint();
+            scrollView(dx, dy);
         }
     }
 
@@ -523,26 +558,31 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      *                       new ones are being rendered.
      */
     public void refresh(boolean keepDirtyTiles) {
+        // The tiles for adjacent zoom levels are about to be thrown away, so
+        // stop rendering them, otherwise the plan would keep its jobs in flight
+        // forever
+        cancelZoomPrefetch();
         queue.clear();
         synchronized (TILE_CACHE_LOCK) {
             for (TileProvider tileProvider: tileProviders.values()) {
+                invalidateDiskTiles(tileProvider);
+                releaseZoomLevels(tileProvider);
                 if (keepDirtyTiles) {
-                    Map<Point, Reference<? extends Image>> dirtyTileCache = tileCaches.get(tileProvider);
+                    final TileStore tileStore = new TileStore();
+                    final int renderZoom = getRenderZoom(tileProvider, zoom);
+                    releaseTiles(tileStores.put(tileProvider, tileStore), tileStore, false);
                     // Remove all dirty tiles which don't exist any more
                     // according to the tile provider, otherwise they won't be
                     // repainted
-                    for (Iterator<Map.Entry<Point, Reference<? extends Image>>> i = dirtyTileCache.entrySet().iterator(); i.hasNext(); ) {
-                        Map.Entry<Point, Reference<? extends Image>> entry = i.next();
-                        Point coords = entry.getKey();
-                        if (! tileProvider.isTilePresent(coords.x, coords.y)) {
-                            i.remove();
+                    for (int i = 0; i < TileStore.STRIPE_COUNT; i++) {
+                        final TileStore.Stripe stripe = tileStore.getStripe(i);
+                        synchronized (stripe) {
+                            stripe.dirtyTiles.removeIf((x, y, tileRef) -> ! isTilePresent(tileProvider, renderZoom, x, y));
                         }
                     }
-                    dirtyTileCaches.put(tileProvider, dirtyTileCache);
                 } else {
-                    dirtyTileCaches.put(tileProvider, new HashMap<>());
+                    releaseTiles(tileStores.put(tileProvider, new TileStore()), null, false);
                 }
-                tileCaches.put(tileProvider, new HashMap<>());
             }
         }
         repaint();
@@ -562,27 +602,49 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      *          origin.
      */
     public void refresh(TileProvider tileProvider, int x, int y) {
-        synchronized (TILE_CACHE_LOCK) {
-            final Point coords = new Point(x, y);
-            final Map<Point, Reference<? extends Image>> tileCache = tileCaches.get(tileProvider);
-            final Reference<? extends Image> tileRef = tileCache.remove(coords);
-            final int effectiveZoom = (tileProvider.isZoomSupported() && (zoom < 0)) ? 0 : zoom;
-            if (tileRef != RENDERING) {
+        invalidateDiskTile(tileProvider, x, y);
+        refreshZoomLevels(tileProvider, Collections.singleton(new Point(x, y)));
+        // For tile providers which don't implement zooming the tile
+        // coordinates are always at zoom level 0, but the current tiles may be
+        // zoomed out mipmap tiles
+        final int shift = tileProvider.isZoomSupported() ? 0 : -getRenderZoom(tileProvider, zoom);
+        refreshTile(tileProvider, x >> shift, y >> shift, getEffectiveZoom(tileProvider, zoom));
+    }
+
+    /**
+     * Refresh a single tile of the current zoom level of a tile provider.
+     */
+    private void refreshTile(TileProvider tileProvider, int x, int y, int effectiveZoom) {
+        final TileStore tileStore = tileStores.get(tileProvider);
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            final TileCache.Entry tileEntry = stripe.tiles.remove(x, y);
+            if (! isRenderingMarker(tileEntry)) {
+                final Reference<? extends Image> tileRef = (tileEntry != null) ? cache.release(tileEntry) : null;
                 final Image tile = (tileRef != null) ? tileRef.get() : null;
                 if (tile != null) {
                     // The old tile is still available; move it to the dirty
                     // tile cache so we have something to paint while the tile
                     // is being rendered
-                    dirtyTileCaches.get(tileProvider).put(coords, tileRef);
+                    stripe.dirtyTiles.put(x, y, tileRef);
                 }
-                if (isTileVisible(x, y, effectiveZoom)) {
+                if (isTileVisible(tileProvider, x, y, effectiveZoom)) {
                     // The tile is visible; immediately schedule it to be
                     // rendered
-                    scheduleTile(tileCache, coords, tileProvider, dirtyTileCaches.get(tileProvider), effectiveZoom, (tile != NO_TILE) ? tile : null);
+                    scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, (tile != NO_TILE) ? tile : null);
+                }
+            } else {
+                // The tile is already rendering, but apparently it has changed, so the result of any render which is
+                // already in progress is obsolete
+                for (TileRenderJob job: runningJobs) {
+                    if ((job.tileStore == tileStore) && (job.x == x) && (job.y == y)) {
+                        job.discard();
+                    }
+                }
+                if (isTileVisible(tileProvider, x, y, effectiveZoom)) {
+                    // Schedule it anyway (if visible)
+                    scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, null);
                 }
-            } else if (isTileVisible(x, y, effectiveZoom)) {
-                // The tile is already rendering, but apparently it has changed so schedule it anyway (if visible)
-                scheduleTile(tileCache, coords, tileProvider, dirtyTileCaches.get(tileProvider), effectiveZoom, null);
             }
         }
     }
@@ -599,31 +661,20 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      *              relative to the image origin.
      */
     public void refresh(TileProvider tileProvider, Set<Point> tiles) {
-        synchronized (TILE_CACHE_LOCK) {
-            final Map<Point, Reference<? extends Image>> tileCache = tileCaches.get(tileProvider);
-            final Map<Point, Reference<? extends Image>> dirtyTileCache = dirtyTileCaches.get(tileProvider);
-            final int effectiveZoom = (tileProvider.isZoomSupported() && (zoom < 0)) ? 0 : zoom;
-            for (Point coords: tiles) {
-                final Reference<? extends Image> tileRef = tileCache.remove(coords);
-                if (tileRef != RENDERING) {
-                    final Image tile = (tileRef != null) ? tileRef.get() : null;
-                    if (tile != null) {
-                        // The old tile is still available; move it to the dirty
-                        // tile cache so we have something to paint while the tile
-                        // is being rendered
-                        dirtyTileCache.put(coords, tileRef);
-                    }
-                    if (isTileVisible(coords.x, coords.y, effectiveZoom)) {
-                        // The tile is visible; immediately schedule it to be
-                        // rendered
-                        scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, (tile != NO_TILE) ? tile : null);
-                    }
-                } else if (isTileVisible(coords.x, coords.y, effectiveZoom)) {
-                    // The tile is already rendering, but apparently it has changed so schedule it anyway (if visible)
-                    scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, null);
-                }
+        final int shift = tileProvider.isZoomSupported() ? 0 : -getRenderZoom(tileProvider, zoom);
+        final Set<Point> currentTiles = (shift == 0) ? tiles : new HashSet<>();
+        refreshZoomLevels(tileProvider, tiles);
+        for (Point coords: tiles) {
+            invalidateDiskTile(tileProvider, coords.x, coords.y);
+            if (shift != 0) {
+                // Several tiles may be contained in the same mipmap tile
+                currentTiles.add(new Point(coords.x >> shift, coords.y >> shift));
             }
         }
+        final int effectiveZoom = getEffectiveZoom(tileProvider, zoom);
+        for (Point coords: currentTiles) {
+            refreshTile(tileProvider, coords.x, coords.y, effectiveZoom);
+        }
     }
 
     /**
@@ -845,6 +896,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
 
     public void setBackgroundImage(BufferedImage backgroundImage) {
         this.backgroundImage = backgroundImage;
+        backgroundBufferStale = true;
         repaint();
     }
 
@@ -856,6 +908,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         if (backgroundImageMode != this.backgroundImageMode) {
             this.backgroundImageMode = backgroundImageMode;
             if (backgroundImage != null) {
+                backgroundBufferStale = true;
                 repaint();
             }
         }
@@ -887,386 +940,2336 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         }
     }
 
-    public void setTileProviderZoom(TileProvider tileProvider, int zoom) {
-        tileProviderZoom.put(tileProvider, zoom);
-        tileProvider.setZoom(((this.zoom + zoom) <= tileProviderZoomCutoff) ? (this.zoom + zoom) : tileProviderZoomCutoff);
-        repaint();
+    /**
+     * Remove a tile from the disk cache, if there is one and the tile provider
+     * is persisted, together with the tiles for the same area at the other
+     * zoom levels: for tile providers which implement zooming themselves all
+     * zoom levels which are stored, and for other tile providers the zoomed
+     * out tiles containing it.
+     */
+    private void invalidateDiskTile(TileProvider tileProvider, int x, int y) {
+        final DiskTileCache diskCache = this.diskCache;
+        final String id;
+        if ((diskCache != null) && ((id = tileProvider.getId()) != null)) {
+            if (tileProvider.isZoomSupported()) {
+                diskCache.invalidateAllZoomLevels(id, getRenderZoom(tileProvider, zoom), x, y);
+            } else {
+                for (int level = 0; level <= MAX_MIPMAP_LEVEL; level++) {
+                    diskCache.invalidate(id, -level, x >> level, y >> level);
+                }
+            }
+        }
     }
 
     /**
-     * Get the currently visible area in world coordinates.
-     *
-     * @return The currently visible area in world coordinates.
+     * Remove all tiles of a tile provider from the disk cache, if there is one and the tile provider is persisted.
      */
-    public Rectangle getVisibleArea() {
-        return new Rectangle(viewToWorld(0, 0, getWidth(), getHeight()));
+    private void invalidateDiskTiles(TileProvider tileProvider) {
+        final DiskTileCache diskCache = this.diskCache;
+        final String id;
+        if ((diskCache != null) && ((id = tileProvider.getId()) != null)) {
+            diskCache.invalidate(id);
+        }
     }
 
     /**
-     * Create clone of this tiled image viewer with a copy of the current tile providers and tile provider caches, so
-     * that it can immediately display the same content, but then behave independently with regard to zooming and
-     * panning.
+     * Render a tile, reading it from the disk cache if it is available there
+     * and storing it in the disk cache if it is not.
      *
-     * @return A clone of this tiled image viewer with the same tile providers and a copy of the current contents of the
-     * caches.
+     * @param tileProvider The tile provider.
+     * @param renderZoom The zoom level at which to render the tile.
+     * @param x The X coordinate of the tile at the render zoom level.
+     * @param y The Y coordinate of the tile at the render zoom level.
+     * @param tile The image on which to render the tile.
+     * @param job The job rendering the tile, which indicates whether the tile
+     *            is still needed.
+     * @return {@code true} if the tile was rendered.
      */
-    @SuppressWarnings("MethodDoesntCallSuperMethod") // Yeah it's fine
-    @Override
-    public TiledImageViewer clone() {
-        final TiledImageViewer clone = new TiledImageViewer(leftClickDrags, paintCentre, tileProviderZoomCutoff);
-        clone.viewX = viewX;
-        clone.viewY = viewY;
-        clone.previousX = previousX;
-        clone.previousY= previousY;
-        clone.markerX = markerX;
-        clone.markerY = markerY;
-        clone.xOffset = xOffset;
-        clone.yOffset= yOffset;
-        clone.zoom = zoom;
-        clone.gridSize = gridSize;
-        clone.paintMarker = paintMarker;
-        clone.paintGrid = paintGrid;
-        clone.gridColour = gridColour;
-        clone.backgroundImage = backgroundImage;
-        clone.backgroundImageMode = backgroundImageMode;
-        clone.inhibitUpdates = inhibitUpdates;
-        clone.labelScale = labelScale;
-
-        // Copy the tile providers and tile caches
-        clone.tileProviders.putAll(tileProviders);
-        clone.tileProviderZoom.putAll(tileProviderZoom);
-        tileCaches.forEach((tileProvider, cache) -> clone.tileCaches.put(tileProvider, new HashMap<>(cache)));
-        dirtyTileCaches.forEach((tileProvider, cache) -> clone.dirtyTileCaches.put(tileProvider, new HashMap<>(cache)));
-
-        return clone;
+    private boolean renderTile(TileProvider tileProvider, int renderZoom, int x, int y, Image tile, TileRenderJob job) {
+        final DiskTileCache diskCache = this.diskCache;
+        final String id = (diskCache != null) ? tileProvider.getId() : null;
+        if (id == null) {
+            return prepareAndPaintTile(tileProvider, renderZoom, x, y, tile, job);
+        }
+        final int tileSize = tileProvider.getTileSize();
+        final long version = tileProvider.getTileVersion();
+        final BufferedImage storedTile = diskCache.read(id, version, renderZoom, x, y);
+        if ((storedTile != null) && (storedTile.getWidth() == tileSize) && (storedTile.getHeight() == tileSize)) {
+            drawOnto(tile, storedTile);
+            return true;
+        } else if (prepareAndPaintTile(tileProvider, renderZoom, x, y, tile, job)) {
+            diskCache.write(id, version, renderZoom, x, y, toBufferedImage(tile));
+            return true;
+        } else {
+            return false;
+        }
     }
 
     /**
-     * Determine whether a tile is currently visible in the viewport.
+     * Render a batch of tiles at the current zoom level of the tile provider,
+     * reading those which are available from the disk cache from there and
+     * having the tile provider paint the rest together, while limiting the
+     * number of tiles being painted concurrently.
      *
-     * @param x The X coordinate of the tile to check for visibility.
-     * @param y The Y coordinate of the tile to check for visibility.
-     * @param effectiveZoom The zoom level to take into account.
-     * @return {@code true} if any part of the specified tile intersects the viewport.
+     * @param tileProvider The tile provider.
+     * @param renderZoom The zoom level at which to render the tiles.
+     * @param jobs The jobs of the tiles to render.
+     * @param tiles The images on which to render the tiles.
+     * @return For each tile, {@code true} if it was rendered.
      */
-    protected final boolean isTileVisible(int x, int y, int effectiveZoom) {
-        return new Rectangle(0, 0, getWidth(), getHeight()).intersects(getTileBounds(x, y, effectiveZoom));
+    private boolean[] renderTiles(TileProvider tileProvider, int renderZoom, java.util.List<TileRenderJob> jobs, Image[] tiles) {
+        final int count = tiles.length;
+        final boolean[] rendered = new boolean[count];
+        final DiskTileCache diskCache = this.diskCache;
+        final String id = (diskCache != null) ? tileProvider.getId() : null;
+        final int tileSize = tileProvider.getTileSize();
+        final long version = (id != null) ? tileProvider.getTileVersion() : 0L;
+        final boolean ioBound = getRenderStrategy(tileProvider) == TileRenderStrategy.IO_BOUND;
+        final int[] indices = new int[count];
+        int paintCount = 0;
+        for (int i = 0; i < count; i++) {
+            final TileRenderJob job = jobs.get(i);
+            if (id != null) {
+                final BufferedImage storedTile = diskCache.read(id, version, renderZoom, job.x, job.y);
+                if ((storedTile != null) && (storedTile.getWidth() == tileSize) && (storedTile.getHeight() == tileSize)) {
+                    drawOnto(tiles[i], storedTile);
+                    rendered[i] = true;
+                    continue;
+                }
+            }
+            if (ioBound) {
+                tileProvider.prepareTile(job.x, job.y, job);
+            }
+            if (! job.isCancelled()) {
+                indices[paintCount++] = i;
+            }
+        }
+        if (paintCount == 0) {
+            return rendered;
+        }
+        final Image[] images = new Image[paintCount];
+        final int[] xs = new int[paintCount], ys = new int[paintCount];
+        final CancellationToken[] cancellationTokens = new CancellationToken[paintCount];
+        for (int i = 0; i < paintCount; i++) {
+            final TileRenderJob job = jobs.get(indices[i]);
+            images[i] = tiles[indices[i]];
+            xs[i] = job.x;
+            ys[i] = job.y;
+            cancellationTokens[i] = job;
+        }
+        final boolean[] painted;
+        final Semaphore paintPermits = scheduler.paintPermits;
+        paintPermits.acquireUninterruptibly();
+        try {
+            painted = tileProvider.paintTiles(images, xs, ys, cancellationTokens);
+        } finally {
+            paintPermits.release();
+        }
+        for (int i = 0; i < paintCount; i++) {
+            if (painted[i]) {
+                rendered[indices[i]] = true;
+                if (id != null) {
+                    diskCache.write(id, version, renderZoom, xs[i], ys[i], toBufferedImage(images[i]));
+                }
+            }
+        }
+        return rendered;
     }
 
     /**
-     * Get the bounds of a tile in component coordinates, taking the current
-     * zoom level into account.
-     *
-     * @param x The X coordinate of the tile for which to determine the bounds.
-     * @param y The X coordinate of the tile for which to determine the bounds.
-     * @return The area in component coordinates taken up by the specified tile.
+     * Paint a tile while limiting the number of tiles being painted
+     * concurrently, after first having the tile provider
+     * {@link TileProvider#prepareTile(int, int, CancellationToken) prepare} it
+     * without that limit if its tiles are rendered with the
+     * {@link TileRenderStrategy#IO_BOUND} strategy.
      */
-    protected final Rectangle getTileBounds(int x, int y) {
-        return getTileBounds(x, y, zoom);
+    private boolean prepareAndPaintTile(TileProvider tileProvider, int renderZoom, int x, int y, Image tile, TileRenderJob job) {
+        if ((getRenderStrategy(tileProvider) == TileRenderStrategy.IO_BOUND) && isCurrentZoom(tileProvider, renderZoom)) {
+            tileProvider.prepareTile(x, y, job);
+            if (job.isCancelled()) {
+                return false;
+            }
+        }
+        final Semaphore paintPermits = scheduler.paintPermits;
+        paintPermits.acquireUninterruptibly();
+        try {
+            return paintTile(tileProvider, renderZoom, x, y, tile, job);
+        } finally {
+            paintPermits.release();
+        }
     }
 
     /**
-     * Get the bounds of a tile in component coordinates, taking a specific
-     * zoom level into account. This version does not take per-tile-provider
-     * offsets into account.
-     *
-     * @param x The X coordinate of the tile for which to determine the bounds.
-     * @param y The X coordinate of the tile for which to determine the bounds.
-     * @param effectiveZoom The zoom level to take into account.
-     * @return The area in component coordinates taken up by the specified tile.
+     * Indicates whether a zoom level at which tiles are rendered is the
+     * current zoom level of the tile provider, at which it paints tiles with
+     * {@link TileProvider#paintTile(Image, int, int, int, int,
+     * CancellationToken)}.
      */
-    protected final Rectangle getTileBounds(int x, int y, int effectiveZoom) {
-        return worldToView(x << TILE_SIZE_BITS, y << TILE_SIZE_BITS, TILE_SIZE, TILE_SIZE, effectiveZoom);
+    private static boolean isCurrentZoom(TileProvider tileProvider, int renderZoom) {
+        return tileProvider.isZoomSupported() ? (tileProvider.getZoom() == renderZoom) : (renderZoom == 0);
     }
-    
+
     /**
-     * Get the bounds of a rectangular area of tiles in component coordinates,
-     * taking a specific zoom level into account. This version does not take
-     * tile-provider-specific offsets into account.
-     *
-     * @param x The X coordinate of the top left tile of the area for which to
-     *          determine the bounds.
-     * @param y The X coordinate of the top left tile of the area for which to
-     *          determine the bounds.
-     * @param width The width in tiles of the area for which to determine the
-     *              bounds.
-     * @param height The height in tiles of the area for which to determine the
-     *               bounds.
-     * @param effectiveZoom The zoom level to take into account.
-     * @return The area in component coordinates taken up by the specified
-     * rectangle of tiles.
+     * Indicates whether the tiles of a tile provider at a specific zoom level
+     * at which tiles are rendered are fully opaque. That is not the case for
+     * the zoomed out levels which are reduced from the tiles of the next finer
+     * level, since some of those tiles may be missing.
      */
-    protected final Rectangle getTileBounds(int x, int y, int width, int height, int effectiveZoom) {
-        return worldToView(x << TILE_SIZE_BITS, y << TILE_SIZE_BITS, TILE_SIZE * width, TILE_SIZE * height, effectiveZoom);
+    private static boolean isOpaque(TileProvider tileProvider, int renderZoom) {
+        return tileProvider.isOpaque() && (tileProvider.isZoomSupported() || (renderZoom >= 0));
     }
 
     /**
-     * Apply translation and scaling to a graphics canvas according to the
-     * current location and zoom settings such that it can be painted using
-     * image coordinates.
-     *
-     * @param g2 The graphics canvas to which to apply the transforms.
-     * @return The scaling factor to apply to image coordinates to account for
-     * the zoom level.
+     * Indicates whether a tile store entry is the {@link TileRenderJob#marker
+     * marker} of a job which is rendering the tile. Each job has its own
+     * marker, so that a job which has been replaced can tell that the marker
+     * is no longer its own.
      */
-    protected final float transformGraphics(Graphics2D g2) {
-        g2.translate(getWidth() / 2, getHeight() / 2);
-        g2.translate(-viewX, -viewY);
-        if (zoom != 0) {
-            float scale = (float) Math.pow(2.0, zoom);
-            g2.scale(scale, scale);
-            return scale;
-        } else {
-            return 1.0f;
-        }
+    private static boolean isRenderingMarker(TileCache.Entry entry) {
+        return (entry != null) && entry.isSentinel() && (entry.getImage() == null);
     }
 
-    private void paintMarkerIfApplicable(Graphics g2) {
-        if (paintMarker) {
-            Color savedColour = g2.getColor();
-            try {
-                g2.setColor(Color.RED);
-                Point markerCoords = worldToView(markerX, markerY);
-                g2.drawLine(markerCoords.x - 5, markerCoords.y, markerCoords.x + 5, markerCoords.y);
-                g2.drawLine(markerCoords.x, markerCoords.y - 5, markerCoords.x, markerCoords.y + 5);
-            } finally {
-                g2.setColor(savedColour);
+    /**
+     * Paint a tile at a specific zoom level, either by having the tile provider
+     * paint it or, for the zoomed out levels of tile providers which do not
+     * implement zooming themselves, by reducing the tiles of the next finer
+     * level.
+     */
+    private boolean paintTile(TileProvider tileProvider, int renderZoom, int x, int y, Image tile, TileRenderJob job) {
+        if (tileProvider.isZoomSupported()) {
+            if (tileProvider.getZoom() != renderZoom) {
+                return tileProvider.paintTile(tile, x, y, 0, 0, renderZoom, job);
+            } else {
+                return tileProvider.paintTile(tile, x, y, 0, 0, job);
             }
+        } else if (renderZoom < 0) {
+            return paintMipmapTile(tileProvider, renderZoom, x, y, tile, job);
+        } else {
+            return tileProvider.paintTile(tile, x, y, 0, 0, job);
         }
     }
 
-    private void startRenderersIfApplicable() {
-        if ((tileRenderers == null) && isDisplayable()) {
-            // The component is already visible but had no tile providers
-            // installed yet; start the background threads
-            if (logger.isDebugEnabled()) {
-                logger.debug("Starting " + threads + " tile rendering threads");
+    /**
+     * Paint a zoomed out tile of a tile provider which does not implement
+     * zooming itself, by reducing the four tiles it covers at the next finer
+     * zoom level with a 2x2 box filter. Those tiles are taken from the tile
+     * store for that level. Any of them which are not available there are
+     * scheduled to be rendered by jobs of their own, and the job for this tile
+     * is deferred until they have been, so that the pyramid of zoom levels is
+     * built up incrementally by the render threads and a changed tile only has
+     * to be rendered again together with the tiles containing it.
+     *
+     * @return {@code true} if the tile was painted, or {@code false} if none of
+     * the tiles it covers are present, or if the job was deferred.
+     */
+    private boolean paintMipmapTile(TileProvider tileProvider, int renderZoom, int x, int y, Image tile, TileRenderJob job) {
+        final TileStore finerTileStore = getTileStore(tileProvider, renderZoom + 1);
+        if ((finerTileStore == null) || job.isCancelled()) {
+            return false;
+        }
+        final Image[] finerTiles = new Image[4];
+        final int tileSize = tileProvider.getTileSize(), halfSize = tileSize / 2;
+        final int[] reducedPixels = new int[tileSize * tileSize];
+        boolean painted = false;
+        // The finer tiles are pinned until they have been read back, so that
+        // they are not recycled and painted on by another job in the mean time
+        job.mipmapSources = finerTiles;
+        try {
+            if (! getMipmapSources(tileProvider, renderZoom + 1, finerTileStore, x, y, job, finerTiles)) {
+                return false;
             }
-            queue = new PriorityBlockingQueue<>();
-            tileRenderers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+            for (int i = 0; i < 4; i++) {
+                if (finerTiles[i] != null) {
+                    // Read back outside the locks of the tile store, since for
+                    // tiles which are not on the heap this copies the image
+                    // from the graphics card
+                    final BufferedImage finerTile = toBufferedImage(finerTiles[i]);
+                    reduce(finerTile.getRGB(0, 0, tileSize, tileSize, null, 0, tileSize), tileSize, reducedPixels, (i >> 1) * halfSize, (i & 1) * halfSize);
+                    painted = true;
+                }
+            }
+        } finally {
+            // Any of the finer tiles which were released in the mean time are
+            // left to the garbage collector
+            job.mipmapSources = null;
         }
-    }
-
-    private void paintGridIfApplicable(Graphics2D g2) {
-        if (! paintGrid) {
-            return;
+        if (painted) {
+            final BufferedImage reducedTile = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+            reducedTile.setRGB(0, 0, tileSize, tileSize, reducedPixels, 0, tileSize);
+            drawOnto(tile, reducedTile);
         }
+        return painted;
+    }
 
-        // Save the current graphics canvas configuration
-        final Color savedColour = g2.getColor();
-        final Stroke savedStroke = g2.getStroke();
-        final Font savedFont = g2.getFont();
-        final Object savedTextAAHint = g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
-
-        try {
-            int effectiveGridSize = gridSize;
-            if (zoom < 0) {
-                // Increase the effective grid size if necessary to prevent the
-                // lines being too close together
-                int minGridSize = Math.min(gridSize, 32);
-                while ((effectiveGridSize >> -zoom) < minGridSize) {
-                    effectiveGridSize *= 2;
-                }
-            }
-
-            // Determine which grid lines to draw, in image coordinates
-            final Rectangle clipInWorld = viewToWorld(g2.getClipBounds());
-            final int x1 = ((clipInWorld.x / effectiveGridSize) - 1) * effectiveGridSize;
-            final int x2 = ((clipInWorld.x + clipInWorld.width) / effectiveGridSize + 1) * effectiveGridSize;
-            final int y1 = ((clipInWorld.y / effectiveGridSize) - 1) * effectiveGridSize;
-            final int y2 = ((clipInWorld.y + clipInWorld.height) / effectiveGridSize + 1) * effectiveGridSize;
-            g2.setColor(gridColour);
-
-            // Determine the exclusion zone for preventing labels from being
-            // obscured by grid lines or other labels
-            final Rectangle2D fontBounds = BOLD_FONT.getStringBounds((labelScale < 5) ? "-00000" : "-000000", g2.getFontRenderContext());
-            final int fontHeight = (int) Math.round(fontBounds.getHeight()), fontWidth = (int) Math.round(fontBounds.getWidth());
-            final int leftClear = fontWidth + 4, topClear = fontHeight + 6;
-
-            // Create and install strokes and fonts
-            final Stroke normalStroke = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[]{2f, 2f}, 0.0f);
-            final Stroke regionBorderStroke = new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10.0f, new float[]{6f, 2f}, 0.0f);
-
-            final boolean drawRegionBorders = (gridSize <= 512) && (gridSize & (gridSize - 1)) == 0; // Power of two
-            final int width = getWidth(), height = getHeight();
-            int xLabelSkip = effectiveGridSize, yLabelSkip = effectiveGridSize;
-            final float scale = (float) Math.pow(2.0, getZoom());
-
-            // Determine per how many grid lines minimum a label can be draw
-            // so that they don't obscure one another, for the horizontal and
-            // vertical direction
-            while ((xLabelSkip * scale) < fontWidth) {
-                xLabelSkip += effectiveGridSize;
-            }
-            while ((yLabelSkip * scale) < fontHeight) {
-                yLabelSkip += effectiveGridSize;
-            }
-
-            // Initial setup of the graphics canvas
-            g2.setStroke(normalStroke);
-            g2.setFont(NORMAL_FONT);
-            boolean normalFontInstalled = true;
-            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
-            boolean normalStrokeInstalled = true;
-
-            // Draw the vertical grid lines and corresponding labels
-            for (int x = x1; x <= x2; x += effectiveGridSize) {
-                if ((x == 0) || (drawRegionBorders && ((x % 512) == 0))) {
-                    g2.setStroke(regionBorderStroke);
-                    normalStrokeInstalled = false;
-                } else if (!normalStrokeInstalled) {
-                    g2.setStroke(normalStroke);
-                    normalStrokeInstalled = true;
-                }
-                Point lineStartInView = worldToView(x, 0);
-                if (lineStartInView.x + 2 >= leftClear) {
-                    if ((x % xLabelSkip) == 0) {
-                        g2.drawLine(lineStartInView.x, 0, lineStartInView.x, height);
-                        if (drawRegionBorders && ((x % 512) == 0)) {
-                            g2.setFont(BOLD_FONT);
-                            normalFontInstalled = false;
-                        } else if (!normalFontInstalled) {
-                            g2.setFont(NORMAL_FONT);
-                            normalFontInstalled = true;
+    /**
+     * Get the four tiles which a zoomed out tile covers from the tile store of
+     * the next finer zoom level. Those which are not available there are
+     * scheduled to be rendered, and if there are any of those, or any which
+     * were already being rendered, the job for the zoomed out tile is
+     * {@link TileRenderJob#defer(int) deferred} until they have been.
+     *
+     * @param tileProvider The tile provider.
+     * @param renderZoom The zoom level of the tiles to get.
+     * @param tileStore The tile store for that zoom level.
+     * @param x The X coordinate of the zoomed out tile.
+     * @param y The Y coordinate of the zoomed out tile.
+     * @param job The job rendering the zoomed out tile.
+     * @param finerTiles The array in which to store the tiles, in the order
+     *                   (0, 0), (0, 1), (1, 0), (1, 1) relative to the first
+     *                   tile, or {@code null} for tiles which are not present.
+     * @return {@code true} if all the tiles were available, or {@code false}
+     * if the job was deferred.
+     */
+    private boolean getMipmapSources(TileProvider tileProvider, int renderZoom, TileStore tileStore, int x, int y, TileRenderJob job, Image[] finerTiles) {
+        final TileRenderScheduler.Client tileRenderers = this.tileRenderers;
+        int awaitedTiles = 0;
+        synchronized (job) {
+            for (int i = 0; i < 4; i++) {
+                final int finerX = (x << 1) + (i >> 1), finerY = (y << 1) + (i & 1);
+                final TileStore.Stripe stripe = tileStore.getStripe(finerX, finerY);
+                synchronized (stripe) {
+                    final TileCache.Entry entry = stripe.tiles.get(finerX, finerY);
+                    if (entry == NO_TILE_ENTRY) {
+                        continue;
+                    } else if (! isRenderingMarker(entry)) {
+                        final Image image = (entry != null) ? entry.getImage() : null;
+                        if ((image != null) && ((! (image instanceof VolatileImage)) || (! ((VolatileImage) image).contentsLost()))) {
+                            finerTiles[i] = image;
+                            continue;
+                        } else if (entry != null) {
+                            // The image was evicted from the cache or lost;
+                            // keep it as a stale tile if it is still available
+                            stripe.tiles.remove(finerX, finerY);
+                            final Reference<? extends Image> staleRef = cache.release(entry);
+                            if (staleRef.get() != null) {
+                                stripe.dirtyTiles.put(finerX, finerY, staleRef);
+                            }
+                        }
+                        if (! isTilePresent(tileProvider, renderZoom, finerX, finerY)) {
+                            stripe.tiles.put(finerX, finerY, NO_TILE_ENTRY);
+                            stripe.dirtyTiles.remove(finerX, finerY);
+                            continue;
+                        } else if (tileRenderers == null) {
+                            // The render threads have been shut down
+                            job.cancel();
+                            return false;
+                        }
+                        // The tiles of the finer zoom level are scaled down one
+                        // more step to cover the same area of the view
+                        final TileRenderJob finerJob = new TileRenderJob(tileStore, finerX, finerY, tileProvider, job.effectiveZoom - 1, renderZoom, null, job.type, null);
+                        finerJob.mipmapSource = true;
+                        stripe.tiles.put(finerX, finerY, finerJob.marker);
+                        try {
+                            tileRenderers.execute(finerJob);
+                        } catch (RejectedExecutionException e) {
+                            // The render threads have been shut down
+                            stripe.tiles.remove(finerX, finerY);
+                            job.cancel();
+                            return false;
                         }
-                        g2.drawString(Integer.toString(x * labelScale), lineStartInView.x + 2, fontHeight + 2);
-                    } else {
-                        g2.drawLine(lineStartInView.x, topClear, lineStartInView.x, height);
                     }
+                    // The tile is being rendered; have it resume this job once
+                    // it has been
+                    stripe.waitingJobs.put(finerX, finerY, job);
+                    awaitedTiles++;
                 }
             }
+            if (awaitedTiles > 0) {
+                job.defer(awaitedTiles);
+            }
+        }
+        return awaitedTiles == 0;
+    }
 
-            // Draw the horizontal grid lines and corresponding labels
-            for (int y = y1; y <= y2; y += effectiveGridSize) {
-                if ((y == 0) || (drawRegionBorders && ((y % 512) == 0))) {
-                    g2.setStroke(regionBorderStroke);
-                    normalStrokeInstalled = false;
-                } else if (!normalStrokeInstalled) {
-                    g2.setStroke(normalStroke);
-                    normalStrokeInstalled = true;
-                }
-                Point lineStartInView = worldToView(0, y);
-                if ((y % yLabelSkip) == 0) {
-                    if (lineStartInView.y + 2 >= topClear) {
-                        g2.drawLine(0, lineStartInView.y, width, lineStartInView.y);
-                    }
-                    if (drawRegionBorders && ((y % 512) == 0)) {
-                        g2.setFont(BOLD_FONT);
-                        normalFontInstalled = false;
-                    } else if (!normalFontInstalled) {
-                        g2.setFont(NORMAL_FONT);
-                        normalFontInstalled = true;
-                    }
-                    g2.drawString(Integer.toString(y * labelScale), 2, lineStartInView.y - 2);
-                } else if (lineStartInView.y + 2 >= topClear) {
-                    g2.drawLine(leftClear, lineStartInView.y, width, lineStartInView.y);
+    /**
+     * Reduce a square image by a factor of two with a 2x2 box filter, weighing
+     * the colours by their alpha, into a quadrant of a destination image of the
+     * same size.
+     *
+     * @param src The pixels of the image to reduce, in ARGB format.
+     * @param size The width and height of the source and destination images.
+     * @param dst The pixels of the destination image, in ARGB format.
+     * @param dstX The X coordinate in the destination image at which to place
+     *             the reduced image.
+     * @param dstY The Y coordinate in the destination image at which to place
+     *             the reduced image.
+     */
+    static void reduce(int[] src, int size, int[] dst, int dstX, int dstY) {
+        final int halfSize = size / 2;
+        for (int y = 0; y < halfSize; y++) {
+            for (int x = 0; x < halfSize; x++) {
+                final int i = (y * 2) * size + x * 2;
+                final int p0 = src[i], p1 = src[i + 1], p2 = src[i + size], p3 = src[i + size + 1];
+                final int a0 = p0 >>> 24, a1 = p1 >>> 24, a2 = p2 >>> 24, a3 = p3 >>> 24;
+                final int alphaSum = a0 + a1 + a2 + a3;
+                final int pixel;
+                if (alphaSum == 0) {
+                    pixel = 0;
+                } else {
+                    final int red = (((p0 >> 16) & 0xff) * a0 + ((p1 >> 16) & 0xff) * a1 + ((p2 >> 16) & 0xff) * a2 + ((p3 >> 16) & 0xff) * a3) / alphaSum;
+                    final int green = (((p0 >> 8) & 0xff) * a0 + ((p1 >> 8) & 0xff) * a1 + ((p2 >> 8) & 0xff) * a2 + ((p3 >> 8) & 0xff) * a3) / alphaSum;
+                    final int blue = ((p0 & 0xff) * a0 + (p1 & 0xff) * a1 + (p2 & 0xff) * a2 + (p3 & 0xff) * a3) / alphaSum;
+                    pixel = (((alphaSum + 2) >> 2) << 24) | (red << 16) | (green << 8) | blue;
                 }
+                dst[(dstY + y) * size + dstX + x] = pixel;
             }
-        } finally {
-            // Restore the original graphics canvas configuration
-            g2.setColor(savedColour);
-            g2.setStroke(savedStroke);
-            g2.setFont(savedFont);
-            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, savedTextAAHint);
         }
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        final Graphics2D g2 = (Graphics2D) g;
-        Rectangle clipBounds = g2.getClipBounds();
-        g2.setColor(getBackground());
-        paintBackground(g2, clipBounds);
-        if (tileProviders.isEmpty()) {
-            return;
+    /**
+     * Determine whether a tile is present at a specific zoom level. For the
+     * zoomed out levels of tile providers which do not implement zooming
+     * themselves this is only an estimate based on the extent of the tile
+     * provider; if none of the tiles it contains turn out to be present the
+     * tile will fail to be painted and be marked as not present then.
+     */
+    private boolean isTilePresent(TileProvider tileProvider, int renderZoom, int x, int y) {
+        if (tileProvider.isZoomSupported() || (renderZoom >= 0)) {
+            return tileProvider.isTilePresent(x, y);
         }
+        final Rectangle extent = tileProvider.getExtent();
+        return (extent == null) || extent.intersects(x << -renderZoom, y << -renderZoom, 1 << -renderZoom, 1 << -renderZoom);
+    }
 
-        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        GraphicsConfiguration gc = getGraphicsConfiguration();
-        for (TileProvider tileProvider: tileProviders.values()) {
-            final Integer tileProviderZoom = this.tileProviderZoom.getOrDefault(tileProvider, 0);
-            final int effectiveZoom = (tileProvider.isZoomSupported() && ((zoom + tileProviderZoom) < tileProviderZoomCutoff)) ? 0 : (zoom + tileProviderZoom - tileProviderZoomCutoff);
-            if (logger.isTraceEnabled()) {
-                logger.trace("Provider {}: zoomSupported: {}, this.zoom: {}, tileProviderZoom: {}, effectiveZoom: {}, tileProvider.getZoom(): {}",
-                        tileProvider, tileProvider.isZoomSupported(), zoom, tileProviderZoom, effectiveZoom, tileProvider.getZoom());
+    /**
+     * Get the tile store for a specific zoom level of a tile provider,
+     * creating it if it does not exist yet. The number of zoom levels for
+     * which tile stores are kept is limited as by {@link #switchZoomLevel(
+     * TileProvider, int, int)}.
+     *
+     * @return The tile store, or {@code null} if the tile provider is no
+     * longer configured.
+     */
+    private TileStore getTileStore(TileProvider tileProvider, int renderZoom) {
+        synchronized (TILE_CACHE_LOCK) {
+            final TileStore tileStore = tileStores.get(tileProvider);
+            final int currentRenderZoom = getRenderZoom(tileProvider, zoom);
+            if ((tileStore == null) || (renderZoom == currentRenderZoom)) {
+                return tileStore;
             }
-            final Point topLeftTileCoords = viewToWorld(clipBounds.getLocation(), effectiveZoom);
-            final int leftTile = topLeftTileCoords.x >> TILE_SIZE_BITS;
-            final int topTile = topLeftTileCoords.y >> TILE_SIZE_BITS;
-            final Point bottomRightTileCoords = viewToWorld(new Point(clipBounds.x + clipBounds.width - 1, clipBounds.y + clipBounds.height - 1), effectiveZoom);
-            final int rightTile = bottomRightTileCoords.x >> TILE_SIZE_BITS;
-            final int bottomTile = bottomRightTileCoords.y >> TILE_SIZE_BITS;
-
-            final int middleTileX = (leftTile + rightTile) / 2;
-            final int middleTileY = (topTile + bottomTile) / 2;
-            final int radius = Math.max(
-                    Math.max(middleTileX - leftTile, rightTile - middleTileX),
-                    Math.max(middleTileY - topTile, bottomTile - middleTileY));
-
-            // Paint the tiles in a spiralish fashion, so that missing tiles are generated in that order
-            paintTile(g2, gc, tileProvider, middleTileX, middleTileY, effectiveZoom);
-            for (int r = 1; r <= radius; r++) {
-                for (int i = 0; i < (r * 2); i++) {
-                    int tileX = middleTileX + i - r, tileY = middleTileY - r;
-                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
-                        paintTile(g2, gc, tileProvider, tileX, tileY, effectiveZoom);
-                    }
-                    tileX = middleTileX + r;
-                    tileY = middleTileY + i - r;
-                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
-                        paintTile(g2, gc, tileProvider, tileX, tileY, effectiveZoom);
-                    }
-                    tileX = middleTileX + r - i;
-                    tileY = middleTileY + r;
-                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
-                        paintTile(g2, gc, tileProvider, tileX, tileY, effectiveZoom);
-                    }
-                    tileX = middleTileX - r;
-                    tileY = middleTileY - i + r;
-                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
-                        paintTile(g2, gc, tileProvider, tileX, tileY, effectiveZoom);
-                    }
-                }
+            final Map<Integer, TileStore> levels = getZoomLevelStores(tileProvider);
+            TileStore levelTileStore = levels.get(renderZoom);
+            if (levelTileStore == null) {
+                levelTileStore = new TileStore();
+                levels.put(renderZoom, levelTileStore);
+                trimZoomLevels(tileProvider, levels, currentRenderZoom);
+            }
+            return levelTileStore;
+        }
+    }
+
+    /**
+     * Get the image to store in the tile cache for a freshly rendered tile:
+     * a copy in the tile atlas if there is one, or otherwise the tile itself.
+     */
+    private Image toCachedImage(Image tile) {
+        final TileAtlas atlas = this.atlas;
+        final GraphicsConfiguration gc;
+        if ((atlas != null) && ((gc = getGraphicsConfiguration()) != null)) {
+            final Image atlasTile = atlas.store(tile, gc);
+            if (atlasTile != null) {
+                return atlasTile;
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Determine whether a freshly rendered tile is fully opaque, either
+     * because the tile provider says so, or by inspecting its pixels if the
+     * tile was rendered on the heap. Accelerated tiles are not inspected, since
+     * reading them back would be about as expensive as rendering them.
+     *
+     * @param tileProvider The tile provider.
+     * @param renderZoom The zoom level at which the tile was rendered.
+     * @param x The X coordinate of the tile at the render zoom level.
+     * @param y The Y coordinate of the tile at the render zoom level.
+     * @param tile The image on which the tile was rendered.
+     * @return {@code true} if the tile is known to be fully opaque.
+     */
+    private static boolean isTileOpaque(TileProvider tileProvider, int renderZoom, int x, int y, Image tile) {
+        if (isOpaque(tileProvider, renderZoom) || (isCurrentZoom(tileProvider, renderZoom) && tileProvider.isTileOpaque(x, y))) {
+            return true;
+        } else if (tile instanceof BufferedImage) {
+            final WritableRaster alphaRaster = ((BufferedImage) tile).getAlphaRaster();
+            if (alphaRaster == null) {
+                return true;
+            }
+            final int width = alphaRaster.getWidth(), height = alphaRaster.getHeight();
+            final int[] alphas = new int[width];
+            for (int row = 0; row < height; row++) {
+                alphaRaster.getSamples(0, row, width, 1, 0, alphas);
+                for (int alpha: alphas) {
+                    if (alpha != 0xff) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Indicates whether a tile image is known to be fully opaque, so that
+     * anything underneath it is hidden.
+     */
+    private static boolean isTileOpaque(Image tile) {
+        return ((tile instanceof Transparency) && (((Transparency) tile).getTransparency() == Transparency.OPAQUE))
+                || OPAQUE_TILES.contains(tile);
+    }
+
+    /**
+     * Record whether a tile image is fully opaque. The record stays with the
+     * image when it becomes a stale tile, and must be cleared when the image
+     * is reused for another tile.
+     */
+    private static void setTileOpaque(Image tile, boolean opaque) {
+        if (opaque) {
+            OPAQUE_TILES.add(tile);
+        } else {
+            OPAQUE_TILES.remove(tile);
+        }
+    }
+
+    /**
+     * Paint (part of) a tile image, which may be a tile in the tile atlas,
+     * scaled to a specific area.
+     */
+    private void drawTile(Graphics2D g2, Image tile, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2) {
+        if (tile instanceof TileAtlas.Tile) {
+            ((TileAtlas.Tile) tile).draw(g2, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, this);
+        } else {
+            g2.drawImage(tile, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, this);
+        }
+    }
+
+    private static void drawOnto(Image tile, BufferedImage image) {
+        final Graphics2D g2 = (Graphics2D) tile.getGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Src);
+            g2.drawImage(image, 0, 0, null);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private static BufferedImage toBufferedImage(Image image) {
+        return (image instanceof VolatileImage) ? ((VolatileImage) image).getSnapshot() : (BufferedImage) image;
+    }
+
+    /**
+     * Get the pool from which the images on which tiles are rendered are
+     * taken, and to which the images of tiles which are no longer needed are
+     * returned.
+     *
+     * @return The pool of tile images of this viewer.
+     */
+    public TileImagePool getTileImagePool() {
+        return imagePool;
+    }
+
+    /**
+     * Get the memory cache in which the fresh tile images of this viewer are kept.
+     *
+     * @return The memory cache in which the fresh tile images of this viewer are kept.
+     */
+    public TileCache getTileCache() {
+        return cache;
+    }
+
+    /**
+     * Set the memory cache in which to keep the fresh tile images of this viewer. By default each viewer has its own
+     * cache, sized according to the {@link #ADVANCED_SETTING_TILE_CACHE_SIZE} advanced setting, but a cache may be
+     * shared between several viewers so that they share a single memory budget. The currently cached tile images are
+     * kept as stale tiles until they have been rendered again.
+     *
+     * @param tileCache The memory cache in which to keep the fresh tile images of this viewer.
+     */
+    public void setTileCache(TileCache tileCache) {
+        if (tileCache == null) {
+            throw new NullPointerException();
+        }
+        if (tileCache != cache) {
+            cancelZoomPrefetch();
+            if (queue != null) {
+                queue.clear();
+            }
+            synchronized (TILE_CACHE_LOCK) {
+                for (TileStore tileStore: tileStores.values()) {
+                    releaseTiles(tileStore, tileStore, false);
+                }
+                zoomLevelStores.values().forEach(levels -> levels.values().forEach(tileStore -> releaseTiles(tileStore, tileStore, false)));
+                cache = tileCache;
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Determine whether the tiles for the zoom levels directly above and below
+     * the current one are rendered in advance.
+     *
+     * @return {@code true} if the tiles for adjacent zoom levels are rendered
+     * in advance.
+     */
+    public boolean isZoomPrefetch() {
+        return zoomPrefetch;
+    }
+
+    /**
+     * Set whether the tiles covering the view at the zoom levels directly above
+     * and below the current one should be rendered in advance, after all
+     * visible tiles have been rendered, so that they are immediately available
+     * when the zoom level is changed. Off by default.
+     *
+     * <p>Tile providers which {@link TileProvider#isZoomSupported() implement
+     * zooming} themselves only have their tiles for other zoom levels rendered
+     * in advance if they {@link TileProvider#isPaintAtZoomSupported() can
+     * paint tiles at another zoom level}. The number of threads used and the
+     * amount of memory taken up by the tiles rendered in advance are limited
+     * by the {@link #ADVANCED_SETTING_ZOOM_PREFETCH_THREADS} and
+     * {@link #ADVANCED_SETTING_ZOOM_PREFETCH_CACHE_SIZE} advanced settings.
+     *
+     * @param zoomPrefetch Whether the tiles for adjacent zoom levels should be
+     *                     rendered in advance.
+     */
+    public void setZoomPrefetch(boolean zoomPrefetch) {
+        if (zoomPrefetch != this.zoomPrefetch) {
+            this.zoomPrefetch = zoomPrefetch;
+            if (! zoomPrefetch) {
+                cancelZoomPrefetch();
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Determine whether the part of the view which remains visible is copied
+     * when the view is moved, rather than painted again.
+     *
+     * @return {@code true} if the view is scrolled by copying it.
+     */
+    public boolean isScrollBlit() {
+        return scrollBlit;
+    }
+
+    /**
+     * Set whether the view should keep a copy of its background and tiles in
+     * an accelerated image, so that when the view is moved (by dragging it, or
+     * with {@link #moveBy(int, int)} or {@link #moveTo(int, int)}) the part of
+     * the view which remains visible can be copied, and only the newly
+     * exposed strips have to be painted again. Off by default.
+     *
+     * <p>The grid, the marker, the centre crosshair, the overlays and anything
+     * painted by subclasses after invoking {@link #paintComponent(Graphics)}
+     * are still painted in full each time the view is painted. Subclasses which
+     * change what the tiles look like must request a repaint, as usual.
+     *
+     * <p>While a {@link #setBackgroundImage(BufferedImage) background image}
+     * is set the view is always painted again in full when it is moved, since
+     * the background image does not move along with the tiles.
+     *
+     * @param scrollBlit Whether the view should be scrolled by copying it.
+     */
+    public void setScrollBlit(boolean scrollBlit) {
+        if (scrollBlit != this.scrollBlit) {
+            this.scrollBlit = scrollBlit;
+            if (! isViewBufferUsed()) {
+                discardViewBuffer();
+                takeInvalidRegions();
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Determine whether the view keeps a composite of its background and the
+     * tiles of all layers between repaints.
+     *
+     * @return {@code true} if the composite of the view is retained.
+     */
+    public boolean isCompositeRetained() {
+        return compositeRetained;
+    }
+
+    /**
+     * Set whether the view should keep a composite of its background and the
+     * tiles of all layers in an accelerated image, so that when a tile is
+     * rendered or changes only the area of that tile has to be composited
+     * again, across all layers, and the area to be repainted is otherwise
+     * simply copied from the composite. This mostly benefits views with
+     * several layers, or many tiles which are rendered at about the same time
+     * in different parts of the view, since a repaint of the whole area
+     * spanned by them is then mostly a copy. Off by default, but also implied
+     * by {@link #setScrollBlit(boolean) scroll blitting}.
+     *
+     * <p>The grid, the marker, the centre crosshair, the overlays and anything
+     * painted by subclasses after invoking {@link #paintComponent(Graphics)}
+     * are still painted in full each time the view is painted. Subclasses which
+     * change what the tiles look like must request a repaint, as usual.
+     *
+     * @param compositeRetained Whether the composite of the view should be
+     *                          retained.
+     */
+    public void setCompositeRetained(boolean compositeRetained) {
+        if (compositeRetained != this.compositeRetained) {
+            this.compositeRetained = compositeRetained;
+            if (! isViewBufferUsed()) {
+                discardViewBuffer();
+                takeInvalidRegions();
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Get the number of zoom level changes for which tiles for the new zoom
+     * level had been rendered in advance by
+     * {@link #setZoomPrefetch(boolean) zoom prefetching}. Counts each zoom
+     * level change once, regardless of the number of tile providers.
+     *
+     * @return The number of zoom level changes for which tiles for the new
+     * zoom level had been rendered in advance.
+     */
+    public long getZoomPrefetchHitCount() {
+        return zoomPrefetchHits.sum();
+    }
+
+    /**
+     * Get the number of zoom level changes while
+     * {@link #setZoomPrefetch(boolean) zoom prefetching} was enabled for which
+     * no tiles for the new zoom level had been rendered in advance. Counts each
+     * zoom level change once, regardless of the number of tile providers.
+     *
+     * @return The number of zoom level changes for which no tiles for the new
+     * zoom level had been rendered in advance.
+     */
+    public long getZoomPrefetchMissCount() {
+        return zoomPrefetchMisses.sum();
+    }
+
+    /**
+     * Get the number of batches in which the areas of tiles which have been
+     * rendered (or found to be absent) have been repainted. The repaints are
+     * collected and requested together at most
+     * {@link #ADVANCED_SETTING_TILE_REPAINT_RATE} times per second.
+     *
+     * @return The number of batches in which the areas of tiles have been
+     * repainted.
+     */
+    public long getTileRepaintFrameCount() {
+        return tileRepaintFrames.sum();
+    }
+
+    /**
+     * Get the number of tiles of which the area has been repainted because
+     * they had been rendered (or found to be absent). Tiles which were no
+     * longer displayed at the zoom level for which they were rendered by the
+     * time their batch was repainted are not counted.
+     *
+     * @return The number of tiles of which the area has been repainted.
+     */
+    public long getRepaintedTileCount() {
+        return repaintedTiles.sum();
+    }
+
+    /**
+     * Get the average number of tiles per batch of tile repaints.
+     *
+     * @return The average number of tiles per batch of tile repaints, or zero
+     * if no tiles have been repainted yet.
+     */
+    public double getTilesPerRepaintFrame() {
+        final long frames = tileRepaintFrames.sum();
+        return (frames > 0) ? ((double) repaintedTiles.sum() / frames) : 0.0;
+    }
+
+    /**
+     * Get the number of batches of tile repaints per second over the most
+     * recent second in which tiles were repainted.
+     *
+     * @return The number of batches of tile repaints per second, or zero if no
+     * tiles have been repainted during the last second.
+     */
+    public float getTileRepaintFrameRate() {
+        return ((System.nanoTime() - lastTileRepaintFrame) > 1_000_000_000L) ? 0.0f : tileRepaintFrameRate;
+    }
+
+    /**
+     * Get the strategy with which the tiles of tile providers which have no
+     * {@link TileProvider#getRenderStrategy() preference} are rendered.
+     *
+     * @return The strategy with which the tiles of tile providers which have
+     * no preference are rendered.
+     */
+    public TileRenderStrategy getRenderStrategy() {
+        return renderStrategy;
+    }
+
+    /**
+     * Set the strategy with which the tiles of tile providers which have no
+     * {@link TileProvider#getRenderStrategy() preference} are rendered. The
+     * default is {@link TileRenderStrategy#FIXED_POOL}. With the
+     * {@link TileRenderStrategy#IO_BOUND} strategy up to
+     * {@link #ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS} tiles are
+     * prepared concurrently by the
+     * {@link #getTileRenderScheduler() tile render scheduler}.
+     *
+     * @param renderStrategy The strategy with which the tiles of tile
+     *                       providers which have no preference should be
+     *                       rendered.
+     */
+    public void setRenderStrategy(TileRenderStrategy renderStrategy) {
+        if (renderStrategy == null) {
+            throw new NullPointerException();
+        }
+        this.renderStrategy = renderStrategy;
+        updateIoBound();
+    }
+
+    /**
+     * Get the size of the pages of the tile atlas into which rendered tiles
+     * are packed.
+     *
+     * @return The width and height in pixels of the pages of the tile atlas,
+     * or zero if tiles are not packed into an atlas.
+     */
+    public int getTileAtlasPageSize() {
+        final TileAtlas atlas = this.atlas;
+        return (atlas != null) ? atlas.getPageSize() : 0;
+    }
+
+    /**
+     * Set the size of the pages of the tile atlas into which rendered tiles
+     * are packed, or disable the tile atlas. With a tile atlas, tiles are
+     * rendered to the heap and then copied into a slot of a large accelerated
+     * image, instead of each being rendered to its own accelerated image, so
+     * that there are far fewer accelerated images to manage and validate.
+     * Tiles which are larger than the pages are not packed into the atlas.
+     * Tiles which have already been rendered are not affected. The default is
+     * {@link #ADVANCED_SETTING_TILE_ATLAS_PAGE_SIZE}.
+     *
+     * @param tileAtlasPageSize The width and height in pixels of the pages of
+     *                          the tile atlas, or zero to render each tile to
+     *                          its own accelerated image.
+     */
+    public void setTileAtlasPageSize(int tileAtlasPageSize) {
+        if (tileAtlasPageSize < 0) {
+            throw new IllegalArgumentException("tileAtlasPageSize " + tileAtlasPageSize + " < 0");
+        }
+        if (tileAtlasPageSize != getTileAtlasPageSize()) {
+            atlas = (tileAtlasPageSize > 0) ? new TileAtlas(tileAtlasPageSize) : null;
+        }
+    }
+
+    /**
+     * Get the scheduler which executes the tile render jobs of this viewer.
+     *
+     * @return The scheduler which executes the tile render jobs of this
+     * viewer.
+     */
+    public TileRenderScheduler getTileRenderScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Set the scheduler which executes the tile render jobs of this viewer. By
+     * default all viewers share the
+     * {@link TileRenderScheduler#getDefault() default scheduler}.
+     *
+     * @param scheduler The scheduler which should execute the tile render jobs
+     *                  of this viewer.
+     */
+    public void setTileRenderScheduler(TileRenderScheduler scheduler) {
+        if (scheduler == null) {
+            throw new NullPointerException();
+        }
+        if (scheduler != this.scheduler) {
+            final boolean running = tileRenderers != null;
+            if (running) {
+                stopRenderers();
+            }
+            this.scheduler = scheduler;
+            if (running) {
+                startRenderers();
+                repaint();
+            }
+        }
+    }
+
+    /**
+     * Make the tile store for another zoom level the current tile store for a
+     * tile provider, keeping the current one in case the view returns to its
+     * zoom level. Only the most recently used
+     * {@link #ADVANCED_SETTING_RETAINED_ZOOM_LEVELS} zoom levels are kept,
+     * not counting the finer zoom levels from which the zoomed out tiles of
+     * the current zoom level are built for tile providers which do not
+     * implement zooming themselves, since those are still needed. The tile
+     * images of all zoom levels count towards the budget of the same
+     * {@link #getTileCache() memory cache}, so the tile images of zoom levels
+     * which are no longer displayed will be evicted first.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while
+     * holding {@link #TILE_CACHE_LOCK}.
+     *
+     * @return {@code true} if tiles had been rendered in advance into the tile
+     * store for the new zoom level by zoom prefetching.
+     */
+    private boolean switchZoomLevel(TileProvider tileProvider, int oldRenderZoom, int renderZoom) {
+        final Map<Integer, TileStore> levels = getZoomLevelStores(tileProvider);
+        TileStore tileStore = levels.remove(renderZoom);
+        final boolean prefetched;
+        if (tileStore != null) {
+            prefetched = tileStore.takeZoomPrefetched();
+        } else {
+            tileStore = new TileStore();
+            prefetched = false;
+        }
+        final TileStore oldTileStore = tileStores.put(tileProvider, tileStore);
+        levels.put(oldRenderZoom, oldTileStore);
+        trimZoomLevels(tileProvider, levels, renderZoom);
+        if (levels.isEmpty()) {
+            zoomLevelStores.remove(tileProvider);
+        }
+        return prefetched;
+    }
+
+    /**
+     * Discard the tile stores for the least recently used zoom levels of a
+     * tile provider beyond {@link #ADVANCED_SETTING_RETAINED_ZOOM_LEVELS},
+     * not counting the finer zoom levels from which the zoomed out tiles of
+     * the current zoom level are built.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while
+     * holding {@link #TILE_CACHE_LOCK}.
+     *
+     * @param tileProvider The tile provider.
+     * @param levels The tile stores for the other zoom levels of the tile
+     *               provider.
+     * @param renderZoom The current zoom level at which the tile provider
+     *                   renders its tiles.
+     */
+    private void trimZoomLevels(TileProvider tileProvider, Map<Integer, TileStore> levels, int renderZoom) {
+        int excessLevels = -retainedZoomLevels;
+        for (int level: levels.keySet()) {
+            if (! isMipmapSourceLevel(tileProvider, renderZoom, level)) {
+                excessLevels++;
+            }
+        }
+        for (Iterator<Map.Entry<Integer, TileStore>> i = levels.entrySet().iterator(); (excessLevels > 0) && i.hasNext(); ) {
+            final Map.Entry<Integer, TileStore> entry = i.next();
+            if (! isMipmapSourceLevel(tileProvider, renderZoom, entry.getKey())) {
+                releaseTiles(entry.getValue(), null, false);
+                i.remove();
+                excessLevels--;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a zoom level is one of the finer zoom levels from
+     * which the zoomed out tiles of the current zoom level of a tile provider
+     * which does not implement zooming itself are built.
+     */
+    private static boolean isMipmapSourceLevel(TileProvider tileProvider, int renderZoom, int level) {
+        return (! tileProvider.isZoomSupported()) && (level > renderZoom) && (level <= 0);
+    }
+
+    /**
+     * Get the tile stores for zoom levels other than the current one of a tile
+     * provider, creating the map if necessary. The map is in access order, so
+     * that the least recently used zoom level comes first.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while
+     * holding {@link #TILE_CACHE_LOCK}.
+     */
+    private Map<Integer, TileStore> getZoomLevelStores(TileProvider tileProvider) {
+        return zoomLevelStores.computeIfAbsent(tileProvider, key -> new LinkedHashMap<>(16, 0.75f, true));
+    }
+
+    /**
+     * Discard the tile stores for zoom levels other than the current one of a
+     * tile provider.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while
+     * holding {@link #TILE_CACHE_LOCK}.
+     */
+    private void releaseZoomLevels(TileProvider tileProvider) {
+        final Map<Integer, TileStore> levels = zoomLevelStores.remove(tileProvider);
+        if (levels != null) {
+            levels.values().forEach(tileStore -> releaseTiles(tileStore, null, false));
+        }
+    }
+
+    /**
+     * Throw away the tiles covering a number of tiles in the tile stores for
+     * other zoom levels of a tile provider. Any fresh tile images will be kept
+     * as stale tile images.
+     */
+    private void refreshZoomLevels(TileProvider tileProvider, Collection<Point> tiles) {
+        synchronized (TILE_CACHE_LOCK) {
+            final Map<Integer, TileStore> levels = zoomLevelStores.get(tileProvider);
+            if (levels == null) {
+                return;
+            }
+            // The tile coordinates are at the current zoom level for tile
+            // providers which implement zooming, and at zoom level 0 for others
+            final int tileZoom = tileProvider.isZoomSupported() ? getRenderZoom(tileProvider, zoom) : 0;
+            levels.forEach((levelZoom, tileStore) -> {
+                final int dZoom = levelZoom - tileZoom;
+                if (dZoom < 0) {
+                    for (Point coords: tiles) {
+                        refreshTile(tileStore, coords.x >> -dZoom, coords.y >> -dZoom);
+                    }
+                } else if ((dZoom < 16) && (((long) tiles.size() << (dZoom * 2)) <= getTileCount(tileStore))) {
+                    for (Point coords: tiles) {
+                        for (int dx = 0; dx < (1 << dZoom); dx++) {
+                            for (int dy = 0; dy < (1 << dZoom); dy++) {
+                                refreshTile(tileStore, (coords.x << dZoom) + dx, (coords.y << dZoom) + dy);
+                            }
+                        }
+                    }
+                } else {
+                    // Fewer tiles are stored than are covered by the changed
+                    // tiles, so visit only the stored ones
+                    final Set<Long> changedTiles = new HashSet<>();
+                    for (Point coords: tiles) {
+                        changedTiles.add(TileMap.key(coords.x, coords.y));
+                    }
+                    final java.util.List<Point> coveredTiles = new ArrayList<>();
+                    for (int i = 0; i < TileStore.STRIPE_COUNT; i++) {
+                        final TileStore.Stripe stripe = tileStore.getStripe(i);
+                        synchronized (stripe) {
+                            stripe.tiles.forEach((x, y, tileEntry) -> {
+                                if (changedTiles.contains(TileMap.key(x >> dZoom, y >> dZoom))) {
+                                    coveredTiles.add(new Point(x, y));
+                                }
+                            });
+                            for (Point coords: coveredTiles) {
+                                refreshTile(tileStore, coords.x, coords.y);
+                            }
+                        }
+                        coveredTiles.clear();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the number of fresh tiles, including sentinels, in a tile store.
+     */
+    private static int getTileCount(TileStore tileStore) {
+        int tileCount = 0;
+        for (int i = 0; i < TileStore.STRIPE_COUNT; i++) {
+            final TileStore.Stripe stripe = tileStore.getStripe(i);
+            synchronized (stripe) {
+                tileCount += stripe.tiles.size();
+            }
+        }
+        return tileCount;
+    }
+
+    /**
+     * Throw away a tile in a tile store which is not currently displayed,
+     * keeping the fresh tile image, if any, as a stale tile image.
+     */
+    private void refreshTile(TileStore tileStore, int x, int y) {
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            final TileCache.Entry tileEntry = stripe.tiles.remove(x, y);
+            if ((tileEntry != null) && (! isRenderingMarker(tileEntry))) {
+                final Reference<? extends Image> tileRef = cache.release(tileEntry);
+                if (tileRef.get() != null) {
+                    stripe.dirtyTiles.put(x, y, tileRef);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the zoom level at which a tile provider renders its tiles for a
+     * particular zoom level of the view.
+     */
+    private int getRenderZoom(TileProvider tileProvider, int viewZoom) {
+        final int zoom = viewZoom + tileProviderZoom.getOrDefault(tileProvider, 0);
+        if (tileProvider.isZoomSupported()) {
+            return (zoom <= tileProviderZoomCutoff) ? zoom : tileProviderZoomCutoff;
+        } else {
+            // The viewer zooms out by building mipmap tiles itself
+            return Math.max(Math.min(zoom - tileProviderZoomCutoff, 0), -MAX_MIPMAP_LEVEL);
+        }
+    }
+
+    /**
+     * Get the zoom level at which the tiles of a tile provider must be scaled
+     * for a particular zoom level of the view.
+     */
+    private int getEffectiveZoom(TileProvider tileProvider, int viewZoom) {
+        final int zoom = viewZoom + tileProviderZoom.getOrDefault(tileProvider, 0);
+        if (tileProvider.isZoomSupported()) {
+            return (zoom < tileProviderZoomCutoff) ? 0 : (zoom - tileProviderZoomCutoff);
+        } else {
+            return zoom - tileProviderZoomCutoff - getRenderZoom(tileProvider, viewZoom);
+        }
+    }
+
+    /**
+     * Get the area in tiles of a tile provider which would cover the entire
+     * view at a zoom level relative to the current one, with the view centred
+     * on the same location.
+     *
+     * @param tileProvider The tile provider.
+     * @param dZoom The difference between the zoom level for which to get the
+     *              area and the current zoom level.
+     * @param effectiveZoom The zoom level at which the tiles would be scaled.
+     * @return The area in tiles which would cover the entire view.
+     */
+    private Rectangle getViewTiles(TileProvider tileProvider, int dZoom, int effectiveZoom) {
+        final int tileSizeBits = getTileSizeBits(tileProvider);
+        final int scaledViewX = (dZoom < 0) ? (viewX >> -dZoom) : (viewX << dZoom);
+        final int scaledViewY = (dZoom < 0) ? (viewY >> -dZoom) : (viewY << dZoom);
+        final int left = scaledViewX - xOffset, top = scaledViewY - yOffset;
+        final int right = left + getWidth() - 1, bottom = top + getHeight() - 1;
+        final int leftTile, topTile, rightTile, bottomTile;
+        if (effectiveZoom < 0) {
+            leftTile = (left << -effectiveZoom) >> tileSizeBits;
+            topTile = (top << -effectiveZoom) >> tileSizeBits;
+            rightTile = (right << -effectiveZoom) >> tileSizeBits;
+            bottomTile = (bottom << -effectiveZoom) >> tileSizeBits;
+        } else {
+            leftTile = (left >> effectiveZoom) >> tileSizeBits;
+            topTile = (top >> effectiveZoom) >> tileSizeBits;
+            rightTile = (right >> effectiveZoom) >> tileSizeBits;
+            bottomTile = (bottom >> effectiveZoom) >> tileSizeBits;
+        }
+        return new Rectangle(leftTile, topTile, rightTile - leftTile + 1, bottomTile - topTile + 1);
+    }
+
+    /**
+     * Get the disk cache in which rendered tiles are persisted, if any.
+     *
+     * @return The disk cache in which rendered tiles are persisted, or {@code null} if tiles are not persisted.
+     */
+    public DiskTileCache getDiskTileCache() {
+        return diskCache;
+    }
+
+    /**
+     * Set a disk cache in which to persist the rendered tiles of the tile providers which have a
+     * {@link TileProvider#getId() stable ID}. Tiles which are not in the memory cache are then first looked up in the
+     * disk cache before being rendered. The default is {@code null}, meaning that tiles are not persisted. The disk
+     * cache may be shared between several viewers, and is not closed by the viewer.
+     *
+     * @param diskTileCache The disk cache in which to persist the rendered tiles, or {@code null} to not persist
+     *                      tiles.
+     */
+    public void setDiskTileCache(DiskTileCache diskTileCache) {
+        diskCache = diskTileCache;
+    }
+
+    /**
+     * Get the width in tiles of the ring around the viewport in which tiles are rendered in advance.
+     *
+     * @return The width in tiles of the prefetch ring. 0 means prefetching is disabled.
+     */
+    public int getPrefetchRing() {
+        return prefetchRing;
+    }
+
+    /**
+     * Set the width in tiles of the ring around the viewport in which tiles are rendered in advance, at a lower
+     * priority than the visible tiles, so that they are already available when they are panned into view. While the
+     * view is being panned the ring is widened in the direction of movement and narrowed behind it. The default is
+     * determined by the {@link #ADVANCED_SETTING_TILE_PREFETCH_RING} advanced setting, which disables prefetching
+     * unless configured otherwise.
+     *
+     * @param prefetchRing The width in tiles of the prefetch ring. 0 disables prefetching.
+     */
+    public void setPrefetchRing(int prefetchRing) {
+        if (prefetchRing < 0) {
+            throw new IllegalArgumentException("prefetchRing " + prefetchRing + " < 0");
+        }
+        if (prefetchRing != this.prefetchRing) {
+            this.prefetchRing = prefetchRing;
+            // Prefetch jobs outside the new ring will be cancelled when the view is repainted
+            repaint();
+        }
+    }
+
+    public void setTileProviderZoom(TileProvider tileProvider, int zoom) {
+        final int oldRenderZoom = getRenderZoom(tileProvider, this.zoom);
+        tileProviderZoom.put(tileProvider, zoom);
+        final int renderZoom = getRenderZoom(tileProvider, this.zoom);
+        tileProvider.setZoom(((this.zoom + zoom) <= tileProviderZoomCutoff) ? (this.zoom + zoom) : tileProviderZoomCutoff);
+        if (renderZoom != oldRenderZoom) {
+            // The tiles in the current tile store, and the tiles being
+            // rendered, are for the old zoom level
+            cancelAllJobs();
+            synchronized (TILE_CACHE_LOCK) {
+                if (tileStores.containsKey(tileProvider)) {
+                    switchZoomLevel(tileProvider, oldRenderZoom, renderZoom);
+                }
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Get the currently visible area in world coordinates.
+     *
+     * @return The currently visible area in world coordinates.
+     */
+    public Rectangle getVisibleArea() {
+        return new Rectangle(viewToWorld(0, 0, getWidth(), getHeight()));
+    }
+
+    /**
+     * Create clone of this tiled image viewer with a copy of the current tile providers and tile provider caches, so
+     * that it can immediately display the same content, but then behave independently with regard to zooming and
+     * panning. The clone displays the current tiles as stale tiles until it has rendered them itself.
+     *
+     * @return A clone of this tiled image viewer with the same tile providers and a copy of the current contents of the
+     * caches.
+     */
+    @SuppressWarnings("MethodDoesntCallSuperMethod") // Yeah it's fine
+    @Override
+    public TiledImageViewer clone() {
+        final TiledImageViewer clone = new TiledImageViewer(leftClickDrags, paintCentre, tileProviderZoomCutoff);
+        clone.viewX = viewX;
+        clone.viewY = viewY;
+        clone.previousX = previousX;
+        clone.previousY= previousY;
+        clone.markerX = markerX;
+        clone.markerY = markerY;
+        clone.xOffset = xOffset;
+        clone.yOffset= yOffset;
+        clone.zoom = zoom;
+        clone.gridSize = gridSize;
+        clone.paintMarker = paintMarker;
+        clone.paintGrid = paintGrid;
+        clone.gridColour = gridColour;
+        clone.backgroundImage = backgroundImage;
+        clone.backgroundImageMode = backgroundImageMode;
+        clone.inhibitUpdates = inhibitUpdates;
+        clone.labelScale = labelScale;
+        clone.prefetchRing = prefetchRing;
+        clone.zoomPrefetch = zoomPrefetch;
+        clone.scrollBlit = scrollBlit;
+        clone.compositeRetained = compositeRetained;
+        clone.renderStrategy = renderStrategy;
+        clone.scheduler = scheduler;
+
+        // Copy the tile providers and tile caches
+        clone.tileProviders.putAll(tileProviders);
+        clone.tileProviderZoom.putAll(tileProviderZoom);
+        clone.cache = cache;
+        clone.diskCache = diskCache;
+        clone.atlas = atlas;
+        clone.imagePool = imagePool;
+        tileStores.forEach((tileProvider, tileStore) -> {
+            clone.tileStores.put(tileProvider, new TileStore(tileStore));
+            // The tile images are now shared with the clone, so neither may
+            // recycle them
+            excludeFromImagePool(tileStore);
+        });
+
+        return clone;
+    }
+
+    /**
+     * Determine whether a tile of {@link #TILE_SIZE} pixels is currently
+     * visible in the viewport.
+     *
+     * @param x The X coordinate of the tile to check for visibility.
+     * @param y The Y coordinate of the tile to check for visibility.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return {@code true} if any part of the specified tile intersects the viewport.
+     */
+    protected final boolean isTileVisible(int x, int y, int effectiveZoom) {
+        return new Rectangle(0, 0, getWidth(), getHeight()).intersects(getTileBounds(x, y, effectiveZoom));
+    }
+
+    /**
+     * Determine whether a tile of a specific tile provider is currently
+     * visible in the viewport, taking the tile size of the tile provider into
+     * account.
+     *
+     * @param tileProvider The tile provider.
+     * @param x The X coordinate of the tile to check for visibility.
+     * @param y The Y coordinate of the tile to check for visibility.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return {@code true} if any part of the specified tile intersects the viewport.
+     */
+    protected final boolean isTileVisible(TileProvider tileProvider, int x, int y, int effectiveZoom) {
+        return new Rectangle(0, 0, getWidth(), getHeight()).intersects(getTileBounds(tileProvider, x, y, effectiveZoom));
+    }
+
+    /**
+     * Get the bounds of a tile of {@link #TILE_SIZE} pixels in component
+     * coordinates, taking the current zoom level into account.
+     *
+     * @param x The X coordinate of the tile for which to determine the bounds.
+     * @param y The X coordinate of the tile for which to determine the bounds.
+     * @return The area in component coordinates taken up by the specified tile.
+     */
+    protected final Rectangle getTileBounds(int x, int y) {
+        return getTileBounds(x, y, zoom);
+    }
+
+    /**
+     * Get the bounds of a tile of {@link #TILE_SIZE} pixels in component
+     * coordinates, taking a specific zoom level into account. This version
+     * does not take per-tile-provider offsets into account.
+     *
+     * @param x The X coordinate of the tile for which to determine the bounds.
+     * @param y The X coordinate of the tile for which to determine the bounds.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return The area in component coordinates taken up by the specified tile.
+     */
+    protected final Rectangle getTileBounds(int x, int y, int effectiveZoom) {
+        return getTileBounds(x, y, effectiveZoom, TILE_SIZE_BITS, new Rectangle());
+    }
+
+    /**
+     * Get the bounds of a tile of a specific tile provider in component
+     * coordinates, taking a specific zoom level and the tile size of the tile
+     * provider into account. This version does not take per-tile-provider
+     * offsets into account.
+     *
+     * @param tileProvider The tile provider.
+     * @param x The X coordinate of the tile for which to determine the bounds.
+     * @param y The X coordinate of the tile for which to determine the bounds.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return The area in component coordinates taken up by the specified tile.
+     */
+    protected final Rectangle getTileBounds(TileProvider tileProvider, int x, int y, int effectiveZoom) {
+        return getTileBounds(x, y, effectiveZoom, getTileSizeBits(tileProvider), new Rectangle());
+    }
+
+    /**
+     * Get the bounds of a tile in component coordinates, taking a specific
+     * zoom level into account, and store them in an existing rectangle, so
+     * that no objects need to be allocated.
+     *
+     * @param x The X coordinate of the tile for which to determine the bounds.
+     * @param y The X coordinate of the tile for which to determine the bounds.
+     * @param effectiveZoom The zoom level to take into account.
+     * @param tileSizeBits The tile size as a power of two.
+     * @param bounds The rectangle in which to store the bounds.
+     * @return {@code bounds}
+     */
+    private Rectangle getTileBounds(int x, int y, int effectiveZoom, int tileSizeBits, Rectangle bounds) {
+        final int worldX = x << tileSizeBits, worldY = y << tileSizeBits, tileSize = 1 << tileSizeBits;
+        if (effectiveZoom == 0) {
+            bounds.setBounds(worldX - viewX + xOffset, worldY - viewY + yOffset, tileSize, tileSize);
+        } else if (effectiveZoom < 0) {
+            bounds.setBounds((worldX >> -effectiveZoom) - viewX + xOffset, (worldY >> -effectiveZoom) - viewY + yOffset, tileSize >> -effectiveZoom, tileSize >> -effectiveZoom);
+        } else {
+            bounds.setBounds((worldX << effectiveZoom) - viewX + xOffset, (worldY << effectiveZoom) - viewY + yOffset, tileSize << effectiveZoom, tileSize << effectiveZoom);
+        }
+        return bounds;
+    }
+    
+    /**
+     * Get the bounds of a rectangular area of tiles of {@link #TILE_SIZE}
+     * pixels in component coordinates, taking a specific zoom level into
+     * account. This version does not take tile-provider-specific offsets into
+     * account.
+     *
+     * @param x The X coordinate of the top left tile of the area for which to
+     *          determine the bounds.
+     * @param y The X coordinate of the top left tile of the area for which to
+     *          determine the bounds.
+     * @param width The width in tiles of the area for which to determine the
+     *              bounds.
+     * @param height The height in tiles of the area for which to determine the
+     *               bounds.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return The area in component coordinates taken up by the specified
+     * rectangle of tiles.
+     */
+    protected final Rectangle getTileBounds(int x, int y, int width, int height, int effectiveZoom) {
+        return worldToView(x << TILE_SIZE_BITS, y << TILE_SIZE_BITS, TILE_SIZE * width, TILE_SIZE * height, effectiveZoom);
+    }
+
+    /**
+     * Get the bounds of a rectangular area of tiles of a specific tile
+     * provider in component coordinates, taking a specific zoom level and the
+     * tile size of the tile provider into account. This version does not take
+     * tile-provider-specific offsets into account.
+     *
+     * @param tileProvider The tile provider.
+     * @param x The X coordinate of the top left tile of the area for which to
+     *          determine the bounds.
+     * @param y The X coordinate of the top left tile of the area for which to
+     *          determine the bounds.
+     * @param width The width in tiles of the area for which to determine the
+     *              bounds.
+     * @param height The height in tiles of the area for which to determine the
+     *               bounds.
+     * @param effectiveZoom The zoom level to take into account.
+     * @return The area in component coordinates taken up by the specified
+     * rectangle of tiles.
+     */
+    protected final Rectangle getTileBounds(TileProvider tileProvider, int x, int y, int width, int height, int effectiveZoom) {
+        final int tileSizeBits = getTileSizeBits(tileProvider);
+        return worldToView(x << tileSizeBits, y << tileSizeBits, width << tileSizeBits, height << tileSizeBits, effectiveZoom);
+    }
+
+    /**
+     * Get the tile size of a tile provider as a power of two.
+     */
+    private static int getTileSizeBits(TileProvider tileProvider) {
+        return Integer.numberOfTrailingZeros(tileProvider.getTileSize());
+    }
+
+    /**
+     * Apply translation and scaling to a graphics canvas according to the
+     * current location and zoom settings such that it can be painted using
+     * image coordinates.
+     *
+     * @param g2 The graphics canvas to which to apply the transforms.
+     * @return The scaling factor to apply to image coordinates to account for
+     * the zoom level.
+     */
+    protected final float transformGraphics(Graphics2D g2) {
+        g2.translate(getWidth() / 2, getHeight() / 2);
+        g2.translate(-viewX, -viewY);
+        if (zoom != 0) {
+            float scale = (float) Math.pow(2.0, zoom);
+            g2.scale(scale, scale);
+            return scale;
+        } else {
+            return 1.0f;
+        }
+    }
+
+    private void paintMarkerIfApplicable(Graphics g2) {
+        if (paintMarker) {
+            Color savedColour = g2.getColor();
+            try {
+                g2.setColor(Color.RED);
+                Point markerCoords = worldToView(markerX, markerY);
+                g2.drawLine(markerCoords.x - 5, markerCoords.y, markerCoords.x + 5, markerCoords.y);
+                g2.drawLine(markerCoords.x, markerCoords.y - 5, markerCoords.x, markerCoords.y + 5);
+            } finally {
+                g2.setColor(savedColour);
+            }
+        }
+    }
+
+    private void startRenderersIfApplicable() {
+        if ((tileRenderers == null) && isDisplayable()) {
+            // The component is already visible but had no tile providers
+            // installed yet; start the background threads
+            startRenderers();
+        }
+    }
+
+    /**
+     * Create the render queue and register it with the
+     * {@link #getTileRenderScheduler() tile render scheduler}.
+     */
+    private void startRenderers() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Registering with tile render scheduler " + scheduler);
+        }
+        queue = new TileRenderQueue();
+        tileRenderers = scheduler.register(queue, isShowing());
+        tileRenderers.setIoBound(isIoBound());
+    }
+
+    /**
+     * Stop having the jobs in the render queue executed by the
+     * {@link #getTileRenderScheduler() tile render scheduler}.
+     */
+    private void stopRenderers() {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Unregistering from tile render scheduler " + scheduler);
+        }
+        cancelAllJobs();
+        tileRenderers.unregister();
+        queue = null;
+        tileRenderers = null;
+    }
+
+    /**
+     * Let the tile render scheduler know whether any of the current tile
+     * providers is rendered with the {@link TileRenderStrategy#IO_BOUND}
+     * strategy.
+     */
+    private void updateIoBound() {
+        final TileRenderScheduler.Client tileRenderers = this.tileRenderers;
+        if (tileRenderers != null) {
+            tileRenderers.setIoBound(isIoBound());
+        }
+    }
+
+    /**
+     * Determine whether any of the current tile providers is rendered with
+     * the {@link TileRenderStrategy#IO_BOUND} strategy.
+     */
+    private boolean isIoBound() {
+        synchronized (TILE_CACHE_LOCK) {
+            for (TileProvider tileProvider: tileProviders.values()) {
+                if (getRenderStrategy(tileProvider) == TileRenderStrategy.IO_BOUND) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the strategy with which the tiles of a tile provider are rendered:
+     * the strategy {@link TileProvider#getRenderStrategy() preferred by the
+     * tile provider}, if any, or otherwise the
+     * {@link #getRenderStrategy() strategy of this viewer}.
+     */
+    private TileRenderStrategy getRenderStrategy(TileProvider tileProvider) {
+        final TileRenderStrategy renderStrategy = tileProvider.getRenderStrategy();
+        return (renderStrategy != null) ? renderStrategy : this.renderStrategy;
+    }
+
+    private void paintGridIfApplicable(Graphics2D g2) {
+        if (! paintGrid) {
+            return;
+        }
+        gridOverlay.paint(g2, viewX - xOffset, viewY - yOffset, getWidth(), getHeight(), zoom, gridSize, gridColour, labelScale);
+    }
+
+    /**
+     * Paint the background and the tiles of all layers in an area of the view.
+     *
+     * @param g2 The canvas on which to paint, clipped to the area to paint.
+     * @param clipBounds The area of the view to paint.
+     * @param gc The graphics configuration associated with the view; used for
+     *           volatile (accelerated) image management.
+     */
+    private void paintView(Graphics2D g2, Rectangle clipBounds, GraphicsConfiguration gc) {
+        g2.setColor(getBackground());
+        if (tileProviders.isEmpty()) {
+            paintBackground(g2, clipBounds, gc);
+            return;
+        }
+
+        // Get the tiles of all layers before painting any of them, from the
+        // top layer down, so that whatever is hidden underneath opaque tiles
+        // does not have to be rendered or painted
+        final int layerCount = tileProviders.size();
+        final LayerTiles[] layers = getPaintLayers(layerCount);
+        int index = 0;
+        for (TileProvider tileProvider: tileProviders.values()) {
+            layers[index++].tileProvider = tileProvider;
+        }
+        for (int i = layerCount - 1; i >= 0; i--) {
+            layers[i].getTiles(clipBounds, gc, layers, layerCount, i);
+        }
+        if (! isHidden(layers, layerCount, -1, clipBounds.x, clipBounds.y, clipBounds.width, clipBounds.height)) {
+            paintBackground(g2, clipBounds, gc);
+        }
+
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        for (int layer = 0; layer < layerCount; layer++) {
+            final LayerTiles layerTiles = layers[layer];
+            final TileProvider tileProvider = layerTiles.tileProvider;
+            final Integer tileProviderZoom = this.tileProviderZoom.getOrDefault(tileProvider, 0);
+            final int effectiveZoom = layerTiles.effectiveZoom;
+            // Get the tile stores of the neighbouring zoom levels, if any, for
+            // placeholders for tiles which have not been rendered yet
+            final TileStore coarserStore, finerStore;
+            synchronized (TILE_CACHE_LOCK) {
+                final Map<Integer, TileStore> levels = zoomLevelStores.get(tileProvider);
+                if (levels != null) {
+                    final int renderZoom = getRenderZoom(tileProvider, zoom);
+                    coarserStore = levels.get(renderZoom - 1);
+                    finerStore = levels.get(renderZoom + 1);
+                } else {
+                    coarserStore = null;
+                    finerStore = null;
+                }
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace("Provider {}: zoomSupported: {}, this.zoom: {}, tileProviderZoom: {}, effectiveZoom: {}, tileProvider.getZoom(): {}",
+                        tileProvider, tileProvider.isZoomSupported(), zoom, tileProviderZoom, effectiveZoom, tileProvider.getZoom());
+            }
+            for (int i = 0; i < layerTiles.count; i++) {
+                final int tileIndex = layerTiles.order[i];
+                if (! layerTiles.hidden[tileIndex]) {
+                    paintTile(g2, gc, tileProvider, layerTiles.leftTile + tileIndex % layerTiles.width, layerTiles.topTile + tileIndex / layerTiles.width, effectiveZoom, layerTiles.images[tileIndex], coarserStore, finerStore);
+                }
+            }
+        }
+        for (int layer = 0; layer < layerCount; layer++) {
+            layers[layer].clear();
+        }
+    }
+
+    /**
+     * Get the {@link #paintLayers} buffers for painting a number of layers,
+     * growing them if necessary.
+     */
+    private LayerTiles[] getPaintLayers(int layerCount) {
+        if (paintLayers.length < layerCount) {
+            final int previousLength = paintLayers.length;
+            paintLayers = Arrays.copyOf(paintLayers, layerCount);
+            for (int i = previousLength; i < layerCount; i++) {
+                paintLayers[i] = new LayerTiles();
+            }
+        }
+        return paintLayers;
+    }
+
+    /**
+     * Indicates whether a copy of the view is kept, either for
+     * {@link #setScrollBlit(boolean) scroll blitting} or because the
+     * {@link #setCompositeRetained(boolean) composite is retained}.
+     */
+    private boolean isViewBufferUsed() {
+        return scrollBlit || compositeRetained;
+    }
+
+    /**
+     * Get the copy of the view used for {@link #setScrollBlit(boolean) scroll
+     * blitting} and as {@link #setCompositeRetained(boolean) retained
+     * composite}, (re)creating it if necessary. The copy has the resolution
+     * of the device, so that it is as sharp as the view painted directly. The
+     * whole view is invalidated if the copy is new or its contents have been
+     * lost.
+     *
+     * @param gc The graphics configuration associated with the view.
+     * @param scaleX The horizontal scale of the device.
+     * @param scaleY The vertical scale of the device.
+     * @return The copy of the view, or {@code null} if the view cannot
+     * currently be copied.
+     */
+    private VolatileImage getViewBuffer(GraphicsConfiguration gc, double scaleX, double scaleY) {
+        final int width = getWidth(), height = getHeight();
+        if ((gc == null) || (width <= 0) || (height <= 0)) {
+            discardViewBuffer();
+            return null;
+        }
+        final int bufferWidth = (int) Math.ceil(width * scaleX), bufferHeight = (int) Math.ceil(height * scaleY);
+        if (viewBuffer != null) {
+            if ((viewBuffer.getWidth() == bufferWidth) && (viewBuffer.getHeight() == bufferHeight)
+                    && (scaleX == viewBufferScaleX) && (scaleY == viewBufferScaleY)) {
+                switch (viewBuffer.validate(gc)) {
+                    case VolatileImage.IMAGE_OK:
+                        return viewBuffer;
+                    case VolatileImage.IMAGE_RESTORED:
+                        invalidateViewBuffer(new Rectangle(0, 0, width, height));
+                        return viewBuffer;
+                }
+            }
+            discardViewBuffer();
+        }
+        viewBuffer = gc.createCompatibleVolatileImage(bufferWidth, bufferHeight);
+        viewBuffer.validate(gc);
+        viewBufferScaleX = scaleX;
+        viewBufferScaleY = scaleY;
+        invalidateViewBuffer(new Rectangle(0, 0, width, height));
+        return viewBuffer;
+    }
+
+    /**
+     * Copy an area of an image which contains the view at the resolution of
+     * the device onto a canvas, pixel for pixel in device space.
+     *
+     * @param g2 The canvas, with the transform of the view.
+     * @param image The image, scaled by the device scale of the canvas.
+     * @param area The area of the view to copy.
+     */
+    private static void drawDeviceImage(Graphics2D g2, Image image, Rectangle area) {
+        final AffineTransform transform = g2.getTransform();
+        final double scaleX = transform.getScaleX(), scaleY = transform.getScaleY();
+        final int x1 = (int) Math.floor(area.x * scaleX), y1 = (int) Math.floor(area.y * scaleY);
+        final int x2 = (int) Math.ceil((area.x + area.width) * scaleX), y2 = (int) Math.ceil((area.y + area.height) * scaleY);
+        g2.setTransform(AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+        try {
+            g2.drawImage(image, x1, y1, x2, y2, x1, y1, x2, y2, null);
+        } finally {
+            g2.setTransform(transform);
+        }
+    }
+
+    private void discardViewBuffer() {
+        if (viewBuffer != null) {
+            viewBuffer.flush();
+            viewBuffer = null;
+        }
+    }
+
+    /**
+     * Repaint the view after it has been moved by a number of pixels. If
+     * {@link #setScrollBlit(boolean) scroll blitting} is enabled the part of
+     * the copy of the view which remains visible is moved along, so that only
+     * the newly exposed strips have to be painted again. Otherwise, or if
+     * there is a background image, the whole view is repainted.
+     *
+     * @param dx The number of pixels the view moved right.
+     * @param dy The number of pixels the view moved down.
+     */
+    private void scrollView(int dx, int dy) {
+        final int width = getWidth(), height = getHeight();
+        // The copy can only be moved along if the distance is a whole number
+        // of device pixels
+        final double deviceDx = dx * viewBufferScaleX, deviceDy = dy * viewBufferScaleY;
+        // The background image is fixed to the view rather than moving along
+        // with the tiles, so it would be dragged along wherever it shows
+        // through
+        if ((! scrollBlit) || (viewBuffer == null) || (backgroundImage != null)
+                || (viewBuffer.getWidth() != (int) Math.ceil(width * viewBufferScaleX)) || (viewBuffer.getHeight() != (int) Math.ceil(height * viewBufferScaleY))
+                || (deviceDx != Math.rint(deviceDx)) || (deviceDy != Math.rint(deviceDy))
+                || (Math.abs(dx) >= width) || (Math.abs(dy) >= height)) {
+            repaint();
+            return;
+        }
+        final Graphics2D g2 = viewBuffer.createGraphics();
+        try {
+            g2.copyArea(0, 0, viewBuffer.getWidth(), viewBuffer.getHeight(), (int) -deviceDx, (int) -deviceDy);
+        } finally {
+            g2.dispose();
+        }
+        synchronized (invalidRegions) {
+            // The regions which were still waiting to be painted have moved
+            // along
+            final Rectangle[] regions = invalidRegions.toArray(new Rectangle[invalidRegions.size()]);
+            invalidRegions.clear();
+            for (Rectangle region: regions) {
+                region.translate(-dx, -dy);
+                addInvalidRegion(region);
+            }
+            if (dx > 0) {
+                addInvalidRegion(new Rectangle(width - dx, 0, dx, height));
+            } else if (dx < 0) {
+                addInvalidRegion(new Rectangle(0, 0, -dx, height));
+            }
+            if (dy > 0) {
+                addInvalidRegion(new Rectangle(0, height - dy, width, dy));
+            } else if (dy < 0) {
+                addInvalidRegion(new Rectangle(0, 0, width, -dy));
+            }
+        }
+        // Only the newly exposed strips are invalid, but the whole view has to
+        // be copied to the screen again
+        super.repaint(0, 0, 0, width, height);
+    }
+
+    /**
+     * Mark a region of the copy of the view as out of date, so that it will be
+     * composited again the next time the view is painted.
+     */
+    private void invalidateViewBuffer(Rectangle region) {
+        synchronized (invalidRegions) {
+            addInvalidRegion(region);
+        }
+    }
+
+    /**
+     * Add a region to the {@link #invalidRegions}, merging it with the regions
+     * it overlaps so that no part of the view is painted more than once.
+     *
+     * <p><strong>Please note:</strong> this method must be invoked while
+     * holding the lock on {@link #invalidRegions}.
+     */
+    private void addInvalidRegion(Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+        final Rectangle mergedRegion = new Rectangle(region);
+        boolean merged;
+        do {
+            merged = false;
+            for (Iterator<Rectangle> i = invalidRegions.iterator(); i.hasNext(); ) {
+                final Rectangle invalidRegion = i.next();
+                if (invalidRegion.intersects(mergedRegion)) {
+                    mergedRegion.add(invalidRegion);
+                    i.remove();
+                    merged = true;
+                }
+            }
+        } while (merged);
+        invalidRegions.add(mergedRegion);
+        if (invalidRegions.size() > MAX_INVALID_REGIONS) {
+            // Not worth keeping track of them separately any more
+            for (Rectangle invalidRegion: invalidRegions) {
+                mergedRegion.add(invalidRegion);
+            }
+            invalidRegions.clear();
+            invalidRegions.add(mergedRegion);
+        }
+    }
+
+    /**
+     * Request the area of a tile to be repainted, because it has been rendered
+     * or found to be absent. May be invoked on any thread. The requests are
+     * collected and the areas merged and repainted together on the event
+     * dispatch thread, at most {@link #ADVANCED_SETTING_TILE_REPAINT_RATE}
+     * times per second, so that the repaint manager is not flooded with the
+     * areas of small tiles which are rendered concurrently.
+     */
+    private void repaintTile(TileProvider tileProvider, int x, int y, int effectiveZoom) {
+        if (tileRepaintTimer == null) {
+            try {
+                repaint(getTileBounds(tileProvider, x, y, effectiveZoom));
+            } catch (UnknownTileProviderException e) {
+                // This means the tile provider is no longer configured on the viewer, meaning there's not much point
+                // in us painting the tile, so just give up silently
+            }
+            return;
+        }
+        synchronized (pendingTileRepaints) {
+            pendingTileRepaints.add(new PendingTileRepaint(tileProvider, x, y, effectiveZoom));
+            // Started and stopped while holding the lock, so that a tile cannot be left behind by a timer which is
+            // just stopping
+            if (! tileRepaintTimer.isRunning()) {
+                tileRepaintTimer.start();
+            }
+        }
+    }
+
+    /**
+     * Repaint the areas of the tiles for which {@link #repaintTile(TileProvider, int, int, int)} has been invoked since
+     * the previous invocation, as few merged rectangles. Stops the timer if there were none. Must be invoked on the
+     * event dispatch thread.
+     */
+    private void repaintPendingTiles() {
+        final PendingTileRepaint[] tiles;
+        synchronized (pendingTileRepaints) {
+            if (pendingTileRepaints.isEmpty()) {
+                tileRepaintTimer.stop();
+                return;
+            }
+            tiles = pendingTileRepaints.toArray(new PendingTileRepaint[pendingTileRepaints.size()]);
+            pendingTileRepaints.clear();
+        }
+        final java.util.List<Rectangle> regions = new ArrayList<>();
+        int tileCount = 0;
+        for (PendingTileRepaint tile: tiles) {
+            if ((! tileProviders.containsValue(tile.tileProvider)) || (getEffectiveZoom(tile.tileProvider, zoom) != tile.effectiveZoom)) {
+                // No longer displayed at the zoom level for which the tile was rendered; the view has been repainted
+                // in its entirety since
+                continue;
+            }
+            try {
+                addRepaintRegion(regions, getTileBounds(tile.tileProvider, tile.x, tile.y, tile.effectiveZoom));
+                tileCount++;
+            } catch (UnknownTileProviderException e) {
+                // This means the tile provider is no longer configured on the viewer, meaning there's not much point
+                // in us painting the tile, so just give up silently
+            }
+        }
+        if (tileCount == 0) {
+            return;
+        }
+        final Rectangle viewBounds = new Rectangle(0, 0, getWidth(), getHeight());
+        for (Rectangle region: regions) {
+            if (region.intersects(viewBounds)) {
+                repaint(region.intersection(viewBounds));
+            }
+        }
+        tileRepaintFrames.increment();
+        repaintedTiles.add(tileCount);
+        final long now = System.nanoTime();
+        if ((now - lastTileRepaintFrame) > 1_000_000_000L) {
+            // Idle for more than a second; start measuring afresh
+            tileRepaintFrameRateStart = now;
+            tileRepaintFrameRateCount = 0;
+            tileRepaintFrameRate = 0.0f;
+        } else {
+            tileRepaintFrameRateCount++;
+            final long elapsed = now - tileRepaintFrameRateStart;
+            if (elapsed >= 1_000_000_000L) {
+                tileRepaintFrameRate = tileRepaintFrameRateCount * 1_000_000_000.0f / elapsed;
+                tileRepaintFrameRateStart = now;
+                tileRepaintFrameRateCount = 0;
+            } else if ((tileRepaintFrameRate == 0.0f) && (elapsed > 0)) {
+                // No complete measurement yet; report the rate so far
+                tileRepaintFrameRate = tileRepaintFrameRateCount * 1_000_000_000.0f / elapsed;
+            }
+        }
+        lastTileRepaintFrame = now;
+    }
+
+    /**
+     * Add the area of a tile to a set of regions to repaint, merging it with
+     * the regions which can be combined with it into one rectangle without
+     * repainting anything outside them, such as the adjacent tiles in the same
+     * row or column.
+     */
+    private static void addRepaintRegion(java.util.List<Rectangle> regions, Rectangle region) {
+        final Rectangle mergedRegion = new Rectangle(region);
+        boolean merged;
+        do {
+            merged = false;
+            for (Iterator<Rectangle> i = regions.iterator(); i.hasNext(); ) {
+                final Rectangle otherRegion = i.next();
+                final Rectangle union = mergedRegion.union(otherRegion);
+                final Rectangle overlap = mergedRegion.intersection(otherRegion);
+                final long overlapArea = overlap.isEmpty() ? 0L : ((long) overlap.width * overlap.height);
+                if (((long) union.width * union.height) <= ((long) mergedRegion.width * mergedRegion.height + (long) otherRegion.width * otherRegion.height - overlapArea)) {
+                    mergedRegion.setBounds(union);
+                    i.remove();
+                    merged = true;
+                }
+            }
+        } while (merged);
+        regions.add(mergedRegion);
+    }
+
+    private Rectangle[] takeInvalidRegions() {
+        synchronized (invalidRegions) {
+            final Rectangle[] regions = invalidRegions.toArray(new Rectangle[invalidRegions.size()]);
+            invalidRegions.clear();
+            return regions;
+        }
+    }
+
+    /**
+     * Record the region to be repainted as out of date in the copy of the view
+     * if one is kept, since anything that changes the view requests a repaint.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+        if (isViewBufferUsed()) {
+            invalidateViewBuffer(new Rectangle(x, y, width, height));
+        }
+        super.repaint(tm, x, y, width, height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        final Graphics2D g2 = (Graphics2D) g;
+        Rectangle clipBounds = g2.getClipBounds();
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        final TileAtlas atlas = this.atlas;
+        if ((atlas != null) && (gc != null)) {
+            // Validate the atlas pages once, rather than each tile on them
+            atlas.validate(gc);
+        }
+        // The images which were released since the last paint are no longer
+        // being painted, so they can now be reused
+        imagePool.commit();
+        final AffineTransform transform = g2.getTransform();
+        final VolatileImage viewBuffer = isViewBufferUsed() ? getViewBuffer(gc, transform.getScaleX(), transform.getScaleY()) : null;
+        if (viewBuffer != null) {
+            // Bring the parts of the copy of the view which are out of date up
+            // to date, and then copy the area to be painted from it
+            final Rectangle bounds = new Rectangle(0, 0, getWidth(), getHeight());
+            final Graphics2D bufferG2 = viewBuffer.createGraphics();
+            try {
+                bufferG2.scale(viewBufferScaleX, viewBufferScaleY);
+                for (Rectangle region: takeInvalidRegions()) {
+                    region = region.intersection(bounds);
+                    if (! region.isEmpty()) {
+                        bufferG2.setClip(region);
+                        paintView(bufferG2, region, gc);
+                    }
+                }
+            } finally {
+                bufferG2.dispose();
+            }
+            drawDeviceImage(g2, viewBuffer, bounds);
+            if (viewBuffer.contentsLost()) {
+                repaint();
+            }
+        } else {
+            paintView(g2, clipBounds, gc);
+        }
+        if (tileProviders.isEmpty()) {
+            return;
+        }
+
+        if (prefetchRing > 0) {
+            for (TileProvider tileProvider: tileProviders.values()) {
+                prefetchTiles(tileProvider, getEffectiveZoom(tileProvider, zoom));
             }
         }
 
         paintGridIfApplicable(g2);
 
-        paintMarkerIfApplicable(g2);
+        paintMarkerIfApplicable(g2);
+
+        final int myWidth = getWidth();
+        final int myHeight = getHeight();
+        if (paintCentre) {
+            final int middleX = myWidth / 2;
+            final int middleY = myHeight / 2;
+            g2.setColor(Color.BLACK);
+            g2.drawLine(middleX - 4, middleY + 1, middleX + 6, middleY + 1);
+            g2.drawLine(middleX + 1, middleY - 4, middleX + 1, middleY + 6);
+            g2.setColor(Color.WHITE);
+            g2.drawLine(middleX - 5, middleY, middleX + 5, middleY);
+            g2.drawLine(middleX, middleY - 5, middleX, middleY + 5);
+        }
+
+        paintOverlays(g2);
+
+        // Unschedule tiles which were scheduled to be rendered but are no
+        // longer visible (or, for prefetch jobs, no longer near the view),
+        // and have the remaining tiles rendered from the centre of the view
+        // outwards
+        final Rectangle viewBounds = new Rectangle(0, 0, myWidth, myHeight);
+        final int prefetchMargin = prefetchRing * 2;
+        boolean visibleTilesPending = false;
+        final java.util.List<TileRenderJob> prunedJobs = new ArrayList<>();
+        for (TileProvider tileProvider: tileProviders.values()) {
+            final int effectiveZoom = getEffectiveZoom(tileProvider, zoom);
+            final Rectangle visibleTiles = getViewTiles(tileProvider, 0, effectiveZoom);
+            final Rectangle prefetchTiles = new Rectangle(visibleTiles);
+            prefetchTiles.grow(prefetchMargin, prefetchMargin);
+            final Point centre = viewToWorld(myWidth / 2, myHeight / 2, effectiveZoom);
+            final int tileSizeBits = getTileSizeBits(tileProvider);
+            queue.setFocus(tileProvider, centre.x >> tileSizeBits, centre.y >> tileSizeBits);
+            visibleTilesPending |= queue.prune(tileProvider, effectiveZoom, visibleTiles, prefetchTiles, prunedJobs);
+        }
+        for (TileRenderJob job: prunedJobs) {
+            clearRenderingFlag(job);
+        }
+        // Likewise ask the tile providers to abandon the tiles they are
+        // currently rendering which are no longer visible
+        for (TileRenderJob job: runningJobs) {
+            if (job.type == JobType.ZOOM_PREFETCH) {
+                continue;
+            }
+            final Rectangle tileBounds = getTileBounds(job.tileProvider, job.x, job.y, job.effectiveZoom);
+            if (job.type == JobType.PREFETCH) {
+                tileBounds.grow(tileBounds.width * prefetchMargin, tileBounds.height * prefetchMargin);
+            }
+            if (! tileBounds.intersects(viewBounds)) {
+                job.cancel();
+            }
+        }
+
+        // Wait with planning the tiles for adjacent zoom levels until the
+        // view has settled down and all visible tiles have been rendered
+        if (zoomPrefetch && (! visibleTilesPending)) {
+            planZoomPrefetch();
+        }
+    }
+
+    /**
+     * Indicates whether there is a layer with opaque tiles above a specific
+     * layer.
+     */
+    private static boolean isOpaqueLayerAbove(LayerTiles[] layers, int layerCount, int layer) {
+        for (int i = layer + 1; i < layerCount; i++) {
+            if (layers[i].hasOpaqueTiles) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether an area of the view is completely hidden by the opaque
+     * tiles of one of the layers above a specific layer.
+     *
+     * @param layers The tiles of all layers, from the bottom up.
+     * @param layerCount The number of layers.
+     * @param layer The index of the layer, or -1 for the background.
+     * @param x The X coordinate of the area of the view to check.
+     * @param y The Y coordinate of the area of the view to check.
+     * @param width The width of the area of the view to check.
+     * @param height The height of the area of the view to check.
+     * @return {@code true} if the area is completely hidden.
+     */
+    private static boolean isHidden(LayerTiles[] layers, int layerCount, int layer, int x, int y, int width, int height) {
+        for (int i = layerCount - 1; i > layer; i--) {
+            if (layers[i].covers(x, y, width, height)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plan the rendering in advance of the tiles covering the view at the zoom
+     * levels directly above and below the current one, if the view has
+     * changed since the last time.
+     */
+    private void planZoomPrefetch() {
+        final int width = getWidth(), height = getHeight();
+        final ZoomPrefetchPlan previousPlan = zoomPrefetchPlan;
+        if (((previousPlan != null) && previousPlan.isFor(viewX, viewY, zoom, width, height)) || (tileRenderers == null)) {
+            return;
+        }
+        cancelZoomPrefetch();
+        final ZoomPrefetchPlan plan = new ZoomPrefetchPlan(viewX, viewY, zoom, width, height);
+        long budget = zoomPrefetchMaxBytes;
+        synchronized (TILE_CACHE_LOCK) {
+            // Zooming in needs the fewest tiles, so prepare for that first
+            for (int dZoom = 1; dZoom >= -1; dZoom -= 2) {
+                for (TileProvider tileProvider: tileProviders.values()) {
+                    final int renderZoom = getRenderZoom(tileProvider, zoom + dZoom);
+                    final TileStore tileStore;
+                    if (renderZoom == getRenderZoom(tileProvider, zoom)) {
+                        tileStore = tileStores.get(tileProvider);
+                    } else if ((! tileProvider.isZoomSupported()) || tileProvider.isPaintAtZoomSupported()) {
+                        tileStore = getZoomLevelStores(tileProvider).computeIfAbsent(renderZoom, key -> new TileStore());
+                    } else {
+                        continue;
+                    }
+                    if (tileStore == null) {
+                        continue;
+                    }
+                    final int effectiveZoom = getEffectiveZoom(tileProvider, zoom + dZoom);
+                    final int tileBytes = tileProvider.getTileSize() * tileProvider.getTileSize() * 4;
+                    final Rectangle tiles = getViewTiles(tileProvider, dZoom, effectiveZoom);
+                    for (int x = tiles.x; x < tiles.x + tiles.width; x++) {
+                        for (int y = tiles.y; y < tiles.y + tiles.height; y++) {
+                            final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+                            synchronized (stripe) {
+                                if (stripe.tiles.containsKey(x, y)) {
+                                    continue;
+                                }
+                            }
+                            if (budget < tileBytes) {
+                                break;
+                            }
+                            budget -= tileBytes;
+                            plan.pending.add(new TileRenderJob(tileStore, x, y, tileProvider, effectiveZoom, renderZoom, null, JobType.ZOOM_PREFETCH, plan));
+                        }
+                    }
+                }
+            }
+        }
+        zoomPrefetchPlan = plan;
+        plan.submitJobs();
+    }
+
+    /**
+     * Cancel the rendering in advance of the tiles for adjacent zoom levels.
+     */
+    private void cancelZoomPrefetch() {
+        final ZoomPrefetchPlan plan = zoomPrefetchPlan;
+        if (plan != null) {
+            plan.cancel();
+            zoomPrefetchPlan = null;
+            if (queue != null) {
+                for (TileRenderJob job: queue.getJobs()) {
+                    if (job.plan == plan) {
+                        cancelJob(job);
+                    }
+                }
+            }
+        }
+    }
 
-        final int myWidth = getWidth();
-        final int myHeight = getHeight();
-        if (paintCentre) {
-            final int middleX = myWidth / 2;
-            final int middleY = myHeight / 2;
-            g2.setColor(Color.BLACK);
-            g2.drawLine(middleX - 4, middleY + 1, middleX + 6, middleY + 1);
-            g2.drawLine(middleX + 1, middleY - 4, middleX + 1, middleY + 6);
-            g2.setColor(Color.WHITE);
-            g2.drawLine(middleX - 5, middleY, middleX + 5, middleY);
-            g2.drawLine(middleX, middleY - 5, middleX, middleY + 5);
+    /**
+     * Remove all jobs from the render queue which have not been picked up by a
+     * render thread yet, and remove the rendering markers for their tiles from
+     * the tile stores.
+     */
+    private void cancelAllJobs() {
+        if (zoomPrefetchPlan != null) {
+            zoomPrefetchPlan.cancel();
+            zoomPrefetchPlan = null;
+        }
+        if (queue != null) {
+            for (TileRenderJob job: queue.drain()) {
+                clearRenderingFlag(job);
+            }
+        }
+        // Ask the tile providers to abandon the tiles they are currently
+        // rendering for the current zoom level. Tiles for other zoom levels
+        // are still useful
+        for (TileRenderJob job: runningJobs) {
+            if (job.type != JobType.ZOOM_PREFETCH) {
+                job.cancel();
+            }
         }
+    }
 
-        paintOverlays(g2);
+    /**
+     * Schedule the tiles in the prefetch ring around the viewport which are not
+     * cached yet to be rendered with a low priority. The tiles are scheduled
+     * from the inside out, so that the tiles nearest to the viewport are
+     * rendered first.
+     *
+     * @param tileProvider The tile provider.
+     * @param effectiveZoom The zoom level to apply.
+     */
+    private void prefetchTiles(TileProvider tileProvider, int effectiveZoom) {
+        final TileStore tileStore = tileStores.get(tileProvider);
+        if ((tileStore == null) || (tileRenderers == null)) {
+            return;
+        }
+        final Rectangle viewTiles = getViewTiles(tileProvider, 0, effectiveZoom);
+        final int leftTile = viewTiles.x, topTile = viewTiles.y;
+        final int rightTile = viewTiles.x + viewTiles.width - 1, bottomTile = viewTiles.y + viewTiles.height - 1;
 
-        // Unschedule tiles which were scheduled to be rendered but are no
-        // longer visible
-        final Rectangle viewBounds = new Rectangle(0, 0, myWidth, myHeight);
-        synchronized (TILE_CACHE_LOCK) {
-            for (Iterator<Runnable> i = queue.iterator(); i.hasNext(); ) {
-                TileRenderJob job = (TileRenderJob) i.next();
-                if (! getTileBounds(job.coords.x, job.coords.y, job.effectiveZoom).intersects(viewBounds)) {
-                    i.remove();
-                    // Remove the RENDERING flag for this tile from the cache,
-                    // otherwise it won't be rendered the next time it becomes
-                    // visible:
-                    tileCaches.get(job.tileProvider).remove(job.coords);
+        // Widen the ring in the direction in which the view is being panned,
+        // and narrow it behind, since those tiles are unlikely to be needed
+        final boolean panning = (System.currentTimeMillis() - lastPanTime) < PAN_VELOCITY_TIMEOUT;
+        final int panDirectionX = panning ? Integer.signum(panVelocityX) : 0, panDirectionY = panning ? Integer.signum(panVelocityY) : 0;
+        final int ring = prefetchRing;
+        final int prefetchLeft = leftTile - ring * (1 - panDirectionX);
+        final int prefetchRight = rightTile + ring * (1 + panDirectionX);
+        final int prefetchTop = topTile - ring * (1 - panDirectionY);
+        final int prefetchBottom = bottomTile + ring * (1 + panDirectionY);
+
+        for (int r = 1; r <= ring * 2; r++) {
+            for (int tileX = leftTile - r; tileX <= rightTile + r; tileX++) {
+                prefetchTile(tileStore, tileX, topTile - r, tileProvider, effectiveZoom, prefetchLeft, prefetchTop, prefetchRight, prefetchBottom);
+                prefetchTile(tileStore, tileX, bottomTile + r, tileProvider, effectiveZoom, prefetchLeft, prefetchTop, prefetchRight, prefetchBottom);
+            }
+            for (int tileY = topTile - r + 1; tileY < bottomTile + r; tileY++) {
+                prefetchTile(tileStore, leftTile - r, tileY, tileProvider, effectiveZoom, prefetchLeft, prefetchTop, prefetchRight, prefetchBottom);
+                prefetchTile(tileStore, rightTile + r, tileY, tileProvider, effectiveZoom, prefetchLeft, prefetchTop, prefetchRight, prefetchBottom);
+            }
+        }
+    }
+
+    private void prefetchTile(TileStore tileStore, int x, int y, TileProvider tileProvider, int effectiveZoom, int prefetchLeft, int prefetchTop, int prefetchRight, int prefetchBottom) {
+        if ((x < prefetchLeft) || (x > prefetchRight) || (y < prefetchTop) || (y > prefetchBottom)) {
+            return;
+        }
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            if (! stripe.tiles.containsKey(x, y)) {
+                scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, null, true);
+            }
+        }
+    }
+
+    /**
+     * Remove a job from the render queue, if it has not been picked up by a
+     * render thread yet, and remove the rendering marker for its tile from the
+     * tile store, otherwise the tile won't be rendered the next time it
+     * becomes visible.
+     *
+     * @param job The job to cancel.
+     */
+    private void cancelJob(TileRenderJob job) {
+        if (queue.remove(job)) {
+            clearRenderingFlag(job);
+        }
+    }
+
+    private void clearRenderingFlag(TileRenderJob job) {
+        job.forget();
+        if (job.plan != null) {
+            job.plan.jobFinished();
+        }
+    }
+
+    /**
+     * Record a movement of the view, to bias prefetching in the direction of
+     * movement.
+     *
+     * @param dx The number of pixels the view moved right.
+     * @param dy The number of pixels the view moved down.
+     */
+    private void recordPan(int dx, int dy) {
+        final long now = System.currentTimeMillis();
+        if ((now - lastPanTime) < PAN_VELOCITY_TIMEOUT) {
+            // Smooth the velocity, so that a single jittery mouse event does
+            // not reverse the direction
+            panVelocityX = (panVelocityX + dx) / 2;
+            panVelocityY = (panVelocityY + dy) / 2;
+        } else {
+            panVelocityX = dx;
+            panVelocityY = dy;
+        }
+        lastPanTime = now;
+    }
+
+    /**
+     * Paint the background in an area of the view. If there is a background
+     * image, the background is copied from the {@link #backgroundBuffer},
+     * into which it is rendered only when the size of the view, the device
+     * scale, the background colour, the background image or its mode have
+     * changed.
+     *
+     * @param g2 The canvas on which to paint, with the background colour
+     *           installed.
+     * @param clipBounds The area of the view to paint.
+     * @param gc The graphics configuration associated with the view; used for
+     *           volatile (accelerated) image management.
+     */
+    private void paintBackground(Graphics2D g2, Rectangle clipBounds, GraphicsConfiguration gc) {
+        if (backgroundImage != null) {
+            final AffineTransform transform = g2.getTransform();
+            final VolatileImage backgroundBuffer = getBackgroundBuffer(gc, g2.getColor(), transform.getScaleX(), transform.getScaleY());
+            if (backgroundBuffer != null) {
+                drawDeviceImage(g2, backgroundBuffer, clipBounds);
+                if (backgroundBuffer.contentsLost()) {
+                    repaint();
+                }
+                return;
+            }
+        }
+        renderBackground(g2, clipBounds);
+    }
+
+    /**
+     * Get the {@link #backgroundBuffer}, creating it or rendering the
+     * background into it again if necessary. The buffer has the resolution of
+     * the device, so that the background image is as sharp as when it is
+     * painted directly.
+     *
+     * @param gc The graphics configuration associated with the view.
+     * @param colour The background colour.
+     * @param scaleX The horizontal scale of the device.
+     * @param scaleY The vertical scale of the device.
+     * @return The background buffer, or {@code null} if there is no graphics
+     * configuration or the view has no size.
+     */
+    private VolatileImage getBackgroundBuffer(GraphicsConfiguration gc, Color colour, double scaleX, double scaleY) {
+        final int width = (int) Math.ceil(getWidth() * scaleX), height = (int) Math.ceil(getHeight() * scaleY);
+        if ((gc == null) || (width <= 0) || (height <= 0)) {
+            discardBackgroundBuffer();
+            return null;
+        }
+        if (backgroundBuffer != null) {
+            if ((backgroundBuffer.getWidth() == width) && (backgroundBuffer.getHeight() == height)
+                    && (scaleX == backgroundBufferScaleX) && (scaleY == backgroundBufferScaleY) && colour.equals(backgroundBufferColour)) {
+                switch (backgroundBuffer.validate(gc)) {
+                    case VolatileImage.IMAGE_OK:
+                        if (backgroundBufferStale) {
+                            renderBackgroundBuffer(colour);
+                        }
+                        return backgroundBuffer;
+                    case VolatileImage.IMAGE_RESTORED:
+                        renderBackgroundBuffer(colour);
+                        return backgroundBuffer;
                 }
             }
+            discardBackgroundBuffer();
+        }
+        backgroundBuffer = gc.createCompatibleVolatileImage(width, height);
+        backgroundBuffer.validate(gc);
+        backgroundBufferScaleX = scaleX;
+        backgroundBufferScaleY = scaleY;
+        renderBackgroundBuffer(colour);
+        return backgroundBuffer;
+    }
+
+    private void renderBackgroundBuffer(Color colour) {
+        backgroundBufferStale = false;
+        final Graphics2D g2 = backgroundBuffer.createGraphics();
+        try {
+            g2.scale(backgroundBufferScaleX, backgroundBufferScaleY);
+            g2.setColor(colour);
+            renderBackground(g2, new Rectangle(0, 0, getWidth(), getHeight()));
+        } finally {
+            g2.dispose();
+        }
+        backgroundBufferColour = colour;
+    }
+
+    private void discardBackgroundBuffer() {
+        if (backgroundBuffer != null) {
+            backgroundBuffer.flush();
+            backgroundBuffer = null;
         }
     }
 
-    private void paintBackground(Graphics2D g2, Rectangle clipBounds) {
+    private void renderBackground(Graphics2D g2, Rectangle clipBounds) {
         if (backgroundImage != null) {
             int width = getWidth(), height = getHeight();
             switch (backgroundImageMode) {
@@ -1356,12 +3359,10 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     }
 
     /**
-     * Immediately paint a specific tile from a specific provider. If a fresh
-     * tile is not available the tile will be scheduled for repainting in the
-     * background, unless the tile provider indicates that the tile is not
-     * present. If a stale version of the tile is available that will be
-     * painted, otherwise the area of the tile will be filled with the canvas'
-     * current colour.
+     * Immediately paint a specific tile from a specific provider, as obtained
+     * from {@link #getTile(TileProvider, int, int, int, GraphicsConfiguration)}.
+     * If no version of the tile is available, a placeholder will be painted if
+     * possible.
      *
      * @param g2 The canvas on which to paint the tile.
      * @param gc The graphics configuration associated with the canvas; used for
@@ -1372,18 +3373,94 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * @param y The Y coordinate of the tile to paint, in tiles relative to the
      *          image origin.
      * @param effectiveZoom The zoom level to apply.
+     * @param tile The freshest available version of the tile, or {@code null}
+     *             if no version of the tile is available.
+     * @param coarserStore The tile store of the zoom level directly below the
+     *                     current one, from which to paint a placeholder, or
+     *                     {@code null} if there is none.
+     * @param finerStore The tile store of the zoom level directly above the
+     *                   current one, from which to paint a placeholder, or
+     *                   {@code null} if there is none.
      * @throws UnknownTileProviderException If the specified tile provider is
      *     not configured on this image viewer.
      */
-    private void paintTile(Graphics2D g2, GraphicsConfiguration gc, TileProvider tileProvider, int x, int y, int effectiveZoom) {
-        final Rectangle tileBounds = getTileBounds(x, y, effectiveZoom);
-        final Image tile = getTile(tileProvider, x, y, effectiveZoom, gc);
+    private void paintTile(Graphics2D g2, GraphicsConfiguration gc, TileProvider tileProvider, int x, int y, int effectiveZoom, Image tile, TileStore coarserStore, TileStore finerStore) {
         if (tile != null) {
-            if ((zoom + tileProviderZoom.getOrDefault(tileProvider, 0)) > 0) {
+            final Rectangle tileBounds = getTileBounds(x, y, effectiveZoom, getTileSizeBits(tileProvider), paintTileBounds);
+            if (tile instanceof TileAtlas.Tile) {
+                final int tileSize = tile.getWidth(null);
+                drawTile(g2, tile, tileBounds.x, tileBounds.y, tileBounds.x + tileBounds.width, tileBounds.y + tileBounds.height, 0, 0, tileSize, tileSize);
+            } else if (effectiveZoom != 0) {
                 g2.drawImage(tile, tileBounds.x, tileBounds.y, tileBounds.width, tileBounds.height, this);
             } else {
                 g2.drawImage(tile, tileBounds.x, tileBounds.y, this);
             }
+        } else if ((coarserStore != null) || (finerStore != null)) {
+            paintPlaceholder(g2, gc, tileProvider, x, y, effectiveZoom, coarserStore, finerStore);
+        }
+    }
+
+    /**
+     * Paint a placeholder for a tile which is being rendered and of which no
+     * stale version is available, by scaling the corresponding tiles of a
+     * neighbouring zoom level, if they are available.
+     */
+    private void paintPlaceholder(Graphics2D g2, GraphicsConfiguration gc, TileProvider tileProvider, int x, int y, int effectiveZoom, TileStore coarserStore, TileStore finerStore) {
+        final TileStore tileStore = tileStores.get(tileProvider);
+        if (tileStore == null) {
+            return;
+        }
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            if (! isRenderingMarker(stripe.tiles.get(x, y))) {
+                // The tile is not present
+                return;
+            }
+        }
+        final Rectangle tileBounds = getTileBounds(x, y, effectiveZoom, getTileSizeBits(tileProvider), paintTileBounds);
+        if (coarserStore != null) {
+            // One tile of the coarser level covers four tiles of this level
+            final Image coarserTile = getPlaceholderImage(coarserStore, x >> 1, y >> 1, gc);
+            if (coarserTile != null) {
+                final int halfSize = coarserTile.getWidth(null) / 2;
+                final int sx = (x & 1) * halfSize, sy = (y & 1) * halfSize;
+                drawTile(g2, coarserTile, tileBounds.x, tileBounds.y, tileBounds.x + tileBounds.width, tileBounds.y + tileBounds.height, sx, sy, sx + halfSize, sy + halfSize);
+                return;
+            }
+        }
+        if (finerStore != null) {
+            // Four tiles of the finer level cover one tile of this level
+            final int halfWidth = tileBounds.width / 2, halfHeight = tileBounds.height / 2;
+            for (int dx = 0; dx < 2; dx++) {
+                for (int dy = 0; dy < 2; dy++) {
+                    final Image finerTile = getPlaceholderImage(finerStore, (x << 1) + dx, (y << 1) + dy, gc);
+                    if (finerTile != null) {
+                        final int finerTileSize = finerTile.getWidth(null);
+                        final int left = tileBounds.x + dx * halfWidth, top = tileBounds.y + dy * halfHeight;
+                        drawTile(g2, finerTile, left, top, left + halfWidth, top + halfHeight, 0, 0, finerTileSize, finerTileSize);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the freshest available image of a tile from a tile store which is
+     * not currently displayed, without recording the access or scheduling the
+     * tile to be rendered.
+     */
+    private Image getPlaceholderImage(TileStore tileStore, int x, int y, GraphicsConfiguration gc) {
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            final TileCache.Entry entry = stripe.tiles.get(x, y);
+            final Image image = ((entry != null) && (entry != NO_TILE_ENTRY)) ? entry.getImage() : null;
+            if ((image instanceof VolatileImage) && (((VolatileImage) image).validate(gc) == VolatileImage.IMAGE_OK)) {
+                return image;
+            } else if ((image != null) && (! (image instanceof VolatileImage))) {
+                return image;
+            } else {
+                return getDirtyTile(x, y, stripe.dirtyTiles, gc);
+            }
         }
     }
 
@@ -1408,33 +3485,46 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * is not present according to the tile provider.
      */
     private Image getTile(TileProvider tileProvider, int x, int y, int effectiveZoom, GraphicsConfiguration gc) {
-        synchronized (TILE_CACHE_LOCK) {
-            final Point coords = new Point(x, y);
-            final Map<Point, Reference<? extends Image>> tileCache = tileCaches.get(tileProvider),
-                    dirtyTileCache = dirtyTileCaches.get(tileProvider);
-            if ((tileCache == null) || (dirtyTileCache == null)) {
-                // We have reports from the wild about this happening. It has to
-                // do with the 3D dynmap previews and happens when adding custom
-                // objects. TODO: how is that possible? Race condition? Threading issue?
-                logger.warn("tileCache or dirtyTileCache null! Proceeding without a tile...");
+        final TileStore tileStore = tileStores.get(tileProvider);
+        if (tileStore == null) {
+            // We have reports from the wild about this happening. It has to
+            // do with the 3D dynmap previews and happens when adding custom
+            // objects. TODO: how is that possible? Race condition? Threading issue?
+            logger.warn("tileStore null! Proceeding without a tile...");
+            return null;
+        }
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            final TileMap<TileCache.Entry> tileCache = stripe.tiles;
+            final TileMap<Reference<? extends Image>> dirtyTileCache = stripe.dirtyTiles;
+            final TileCache.Entry entry = tileCache.get(x, y);
+            if (isRenderingMarker(entry)) {
+                // The tile is already queued for rendering. If it was only
+                // being prefetched, requeue it with the priority of a visible
+                // tile. Return a dirty tile if we have one.
+                final TileRenderJob prefetchJob = stripe.prefetchJobs.remove(x, y);
+                if ((prefetchJob != null) && queue.remove(prefetchJob)) {
+                    final TileRenderJob job = new TileRenderJob(tileStore, x, y, tileProvider, effectiveZoom, prefetchJob.renderZoom, prefetchJob.image, JobType.VISIBLE, null);
+                    tileCache.put(x, y, job.marker);
+                    tileRenderers.execute(job);
+                }
+                return getDirtyTile(x, y, dirtyTileCache, gc);
+            } else if (entry == NO_TILE_ENTRY) {
+                // There is no tile here according to the tile provider
                 return null;
-            }
-            final Reference<? extends Image> ref = tileCache.get(coords);
-            if (ref == RENDERING) {
-                // The tile is already queued for rendering. Return a dirty tile if
-                // we have one.
-                return getDirtyTile(coords, dirtyTileCache, gc);
-            } else if (ref != null) {
-                final Image tile = ref.get();
+            } else if (entry != null) {
+                final Image tile = cache.get(entry);
                 if (tile == null) {
-                    // The image was garbage collected; remove the reference from
-                    // the cache and schedule it to be rendered again
-                    tileCache.remove(coords);
-                    scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, null);
-                    return getDirtyTile(coords, dirtyTileCache, gc);
-                } else if (tile == NO_TILE) {
-                    // There is no tile here according to the tile provider
-                    return null;
+                    // The image was evicted from the cache; remove the entry
+                    // from the cache, keep the image as a stale tile if it is
+                    // still available and schedule it to be rendered again
+                    tileCache.remove(x, y);
+                    final Reference<? extends Image> staleRef = entry.toReference();
+                    if (staleRef.get() != null) {
+                        dirtyTileCache.put(x, y, staleRef);
+                    }
+                    scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, null);
+                    return getDirtyTile(x, y, dirtyTileCache, gc);
                 } else if (tile instanceof VolatileImage) {
                     switch (((VolatileImage) tile).validate(gc)) {
                         case VolatileImage.IMAGE_OK:
@@ -1444,7 +3534,8 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
                             // have been affected. schedule it to be rendered
                             // again
                             // TODO: should we be returning it anyway?
-                            scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, tile);
+                            cache.release(entry);
+                            scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, tile);
                             return tile;
                         case VolatileImage.IMAGE_INCOMPATIBLE:
                             // Weirdly, the image is no longer compatible with
@@ -1453,8 +3544,8 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
                             // dirty tile cache; those tiles probably aren't
                             // compatible any more also. TODO: can this even
                             // happen?
-                            tileCache.remove(coords);
-                            scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, null);
+                            cache.release(tileCache.remove(x, y));
+                            scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, null);
                             return null;
                         default:
                             throw new InternalError("Unknown validation result");
@@ -1464,8 +3555,9 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
                 }
             } else {
                 // Tile not present in cache
-                scheduleTile(tileCache, coords, tileProvider, dirtyTileCache, effectiveZoom, null);
-                return getDirtyTile(coords, dirtyTileCache, gc);
+                cache.recordMiss();
+                scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, null);
+                return getDirtyTile(x, y, dirtyTileCache, gc);
             }
         }
     }
@@ -1474,10 +3566,12 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * Get a cached stale copy of a specific tile from a specific provider.
      *
      * <p><strong>Please note:</strong> this method must be invoked while
-     * holding the lock on {@link #TILE_CACHE_LOCK}.
+     * holding the lock on the stripe containing the tile.
      *
-     * @param coords The coordinates of the tile to get, in tiles relative to
-     *               the image origin.
+     * @param x The X coordinate of the tile to get, in tiles relative to the
+     *          image origin.
+     * @param y The Y coordinate of the tile to get, in tiles relative to the
+     *          image origin.
      * @param dirtyTileCache The cache from which to get the stale tile.
      * @param gc The graphics configuration to use for volatile (accelerated)
      *           image management.
@@ -1485,14 +3579,14 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * if the tile is not available from the cache, or if the tile is not
      * present according to the tile provider.
      */
-    private Image getDirtyTile(Point coords, Map<Point, Reference<? extends Image>> dirtyTileCache, GraphicsConfiguration gc) {
-        final Reference<? extends Image> dirtyRef = dirtyTileCache.get(coords);
+    private Image getDirtyTile(int x, int y, TileMap<Reference<? extends Image>> dirtyTileCache, GraphicsConfiguration gc) {
+        final Reference<? extends Image> dirtyRef = dirtyTileCache.get(x, y);
         if (dirtyRef != null) {
             final Image dirtyTile = dirtyRef.get();
             if (dirtyTile == null) {
                 // The image was garbage collected; remove the reference
                 // from the cache
-                dirtyTileCache.remove(coords);
+                dirtyTileCache.remove(x, y);
                 return null;
             } else if (dirtyTile == NO_TILE) {
                 // There was no tile here according to the tile provider
@@ -1510,7 +3604,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
                         // Weirdly, the image is no longer compatible with the
                         // graphics configuration. Oh well, it was a dirty tile
                         // anyway. TODO: can this even happen?
-                        dirtyTileCache.remove(coords);
+                        dirtyTileCache.remove(x, y);
                         return null;
                     default:
                         throw new InternalError("Unknown validation result");
@@ -1527,31 +3621,157 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * Schedule a tile for background rendering, or remove it from the cache if
      * the tile provider indicates it is not present.
      *
-     * @param tileCache The cache in which the rendered tile should be stored.
-     * @param coords The coordinates of the tile to render, in tiles relative to
-     *               the image origin.
+     * @param tileStore The tile store in which the rendered tile should be
+     *                  stored, and in which any currently cached version of
+     *                  the tile will be stored as a stale copy.
+     * @param x The X coordinate of the tile to render, in tiles relative to the
+     *          image origin.
+     * @param y The Y coordinate of the tile to render, in tiles relative to the
+     *          image origin.
+     * @param tileProvider The tile provider.
+     * @param effectiveZoom The zoom level to apply.
+     * @param image The currently cached tile image for the tile, if any.
+     */
+    private void scheduleTile(final TileStore tileStore, final int x, final int y, final TileProvider tileProvider, final int effectiveZoom, final Image image) {
+        scheduleTile(tileStore, x, y, tileProvider, effectiveZoom, image, false);
+    }
+
+    /**
+     * Schedule a tile for background rendering, or remove it from the cache if
+     * the tile provider indicates it is not present.
+     *
+     * @param tileStore The tile store in which the rendered tile should be
+     *                  stored, and in which any currently cached version of
+     *                  the tile will be stored as a stale copy.
+     * @param x The X coordinate of the tile to render, in tiles relative to the
+     *          image origin.
+     * @param y The Y coordinate of the tile to render, in tiles relative to the
+     *          image origin.
      * @param tileProvider The tile provider.
-     * @param dirtyTileCache The stale tile cache in which any currently cached
-     *                       version of the tile will be stored as a stale copy.
      * @param effectiveZoom The zoom level to apply.
      * @param image The currently cached tile image for the tile, if any.
+     * @param prefetch Whether the tile is not visible but is being rendered in
+     *                 advance, in which case it will only be rendered once
+     *                 there are no visible tiles waiting to be rendered.
      */
-    private void scheduleTile(final Map<Point, Reference<? extends Image>> tileCache, final Point coords, final TileProvider tileProvider, final Map<Point, Reference<? extends Image>> dirtyTileCache, final int effectiveZoom, final Image image) {
-        synchronized (TILE_CACHE_LOCK) {
-            if (tileProvider.isTilePresent(coords.x, coords.y)) {
-                tileCache.put(coords, RENDERING);
-                tileRenderers.execute(new TileRenderJob(tileCache, dirtyTileCache, coords, tileProvider, effectiveZoom, image));
+    private void scheduleTile(final TileStore tileStore, final int x, final int y, final TileProvider tileProvider, final int effectiveZoom, final Image image, final boolean prefetch) {
+        final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+        synchronized (stripe) {
+            final int renderZoom = getRenderZoom(tileProvider, zoom);
+            if (isTilePresent(tileProvider, renderZoom, x, y)) {
+                final TileRenderJob job = new TileRenderJob(tileStore, x, y, tileProvider, effectiveZoom, renderZoom, image, prefetch ? JobType.PREFETCH : JobType.VISIBLE, null);
+                stripe.tiles.put(x, y, job.marker);
+                if (prefetch) {
+                    stripe.prefetchJobs.put(x, y, job);
+                } else {
+                    stripe.prefetchJobs.remove(x, y);
+                }
+                tileRenderers.execute(job);
             } else {
-                tileCache.put(coords, new SoftReference<>(NO_TILE));
-                dirtyTileCache.remove(coords);
-                try {
-                    repaint(getTileBounds(coords.x, coords.y, effectiveZoom));
-                } catch (UnknownTileProviderException e) {
-                    // This means the tile provider is no longer configured on this image viewer, meaning there's not
-                    // much point in us trying to paint it, so give up silently
+                stripe.tiles.put(x, y, NO_TILE_ENTRY);
+                stripe.dirtyTiles.remove(x, y);
+                repaintTile(tileProvider, x, y, effectiveZoom);
+            }
+        }
+    }
+
+    /**
+     * Release the fresh tiles in a tile store from the memory budget and
+     * remove them from the store, optionally keeping the tile images which are
+     * still available as stale tiles.
+     *
+     * @param tileStore The tile store to release. May be {@code null}.
+     * @param staleTileStore The tile store to which to add the tile images that
+     *                       are still available as stale tiles, or
+     *                       {@code null} if they should be discarded. May be
+     *                       the same as {@code tileStore}.
+     * @param includeDirtyTiles Whether to also add the stale tiles of
+     *                          {@code tileStore} to {@code staleTileStore}.
+     */
+    private void releaseTiles(TileStore tileStore, TileStore staleTileStore, boolean includeDirtyTiles) {
+        if (tileStore == null) {
+            return;
+        }
+        if (staleTileStore != tileStore) {
+            // Any tiles still being rendered for the tile store will be thrown
+            // away
+            tileStore.retire();
+        }
+        final java.util.List<TileRenderJob> waitingJobs = new ArrayList<>();
+        for (int i = 0; i < TileStore.STRIPE_COUNT; i++) {
+            final TileStore.Stripe stripe = tileStore.getStripe(i);
+            synchronized (stripe) {
+                final TileStore.Stripe staleStripe = (staleTileStore != null) ? staleTileStore.getStripe(i) : null;
+                if ((staleStripe != null) && includeDirtyTiles && (staleStripe != stripe)) {
+                    stripe.dirtyTiles.forEach(staleStripe.dirtyTiles::put);
+                } else if (staleStripe == null) {
+                    // The tile store is being discarded, so its stale tiles are no longer needed
+                    stripe.dirtyTiles.forEach((x, y, tileImageRef) -> recycle(tileImageRef.get()));
+                }
+                stripe.tiles.forEach((x, y, tileEntry) -> {
+                    if (! isRenderingMarker(tileEntry)) {
+                        final Reference<? extends Image> tileImageRef = cache.release(tileEntry);
+                        if (staleStripe == null) {
+                            recycle(tileImageRef.get());
+                        } else if (tileImageRef.get() != null) {
+                            staleStripe.dirtyTiles.put(x, y, tileImageRef);
+                        }
+                    }
+                });
+                stripe.tiles.clear();
+                stripe.prefetchJobs.clear();
+                stripe.waitingJobs.forEach((x, y, job) -> waitingJobs.add(job));
+                stripe.waitingJobs.clear();
+            }
+        }
+        // The tiles for which these jobs were waiting will no longer be stored
+        // here, so they would wait forever
+        waitingJobs.forEach(job -> job.finerTileDone(false));
+    }
+
+    /**
+     * Return a tile image which is no longer used by any tile store to the
+     * tile image pool, unless a running render job is still painting on it or
+     * reading it back to build a zoomed out tile.
+     *
+     * @param image The image to recycle. May be {@code null}.
+     */
+    private void recycle(Image image) {
+        if ((image == null) || (image == NO_TILE)) {
+            return;
+        }
+        for (TileRenderJob job: runningJobs) {
+            if (job.image == image) {
+                return;
+            }
+            final Image[] mipmapSources = job.mipmapSources;
+            if (mipmapSources != null) {
+                for (Image mipmapSource: mipmapSources) {
+                    if (mipmapSource == image) {
+                        return;
+                    }
                 }
             }
         }
+        setTileOpaque(image, false);
+        imagePool.release(image);
+    }
+
+    /**
+     * Prevent the tile images in a tile store from ever being recycled.
+     */
+    private void excludeFromImagePool(TileStore tileStore) {
+        for (int i = 0; i < TileStore.STRIPE_COUNT; i++) {
+            final TileStore.Stripe stripe = tileStore.getStripe(i);
+            synchronized (stripe) {
+                stripe.tiles.forEach((x, y, tileEntry) -> imagePool.exclude(tileEntry.getImage()));
+                stripe.dirtyTiles.forEach((x, y, tileImageRef) -> imagePool.exclude(tileImageRef.get()));
+            }
+        }
+    }
+
+    private static Image getImage(Reference<? extends Image> imageRef) {
+        return (imageRef != null) ? imageRef.get() : null;
     }
 
     private void fireViewChangedEvent() {
@@ -1637,8 +3857,9 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         viewY -= dy;
         previousX = e.getX();
         previousY = e.getY();
+        recordPan(-dx, -dy);
         fireViewChangedEvent();
-        repaint();
+        scrollView(-dx, -dy);
     }
 
     @Override public void mouseMoved(MouseEvent e) {}
@@ -1647,26 +3868,20 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     
     @Override
     public void hierarchyChanged(HierarchyEvent event) {
+        if (((event.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) && (tileRenderers != null)) {
+            // Tiles for viewers which are on the screen are rendered first
+            tileRenderers.setShowing(isShowing());
+        }
         if (((event.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0)) {
             // The JIDE framework temporarily removes the view from the hierarchy when the layout is reset, so we have
             // to be prepared to reinitialise the render queue when the view is re-added to the hierarchy
             if (isDisplayable()) {
                 if (! tileProviders.isEmpty()) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Starting " + threads + " tile rendering threads");
-                    }
-                    queue = new PriorityBlockingQueue<>();
-                    tileRenderers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+                    startRenderers();
                 }
             } else {
                 if (tileRenderers != null) {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Shutting down " + threads + " tile rendering threads");
-                    }
-                    queue.clear();
-                    tileRenderers.shutdownNow();
-                    queue = null;
-                    tileRenderers = null;
+                    stopRenderers();
                 }
             }
         }
@@ -1681,11 +3896,10 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      */
     private final boolean paintCentre;
     /**
-     * The maximum number of background threads to use for rendering tiles.
-     */
-    private final int threads;
-    /**
-     * A monitor for coordinating multithreaded access to the tile caches.
+     * A monitor for coordinating structural changes to the tile caches, such
+     * as replacing the tile store of a tile provider. Access to individual
+     * tiles is guarded by the monitors of the {@link TileStore.Stripe stripes}
+     * of the tile stores instead.
      */
     private final Object TILE_CACHE_LOCK = new Object();
     /**
@@ -1695,8 +3909,42 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     /**
      * The fresh and stale tile caches for each tile provider.
      */
-    private final Map<TileProvider, Map<Point, Reference<? extends Image>>> tileCaches = new HashMap<>(),
-            dirtyTileCaches = new HashMap<>();
+    private final Map<TileProvider, TileStore> tileStores = new ConcurrentHashMap<>();
+    /**
+     * The memory budget for the fresh tile images.
+     */
+    private volatile TileCache cache;
+    /**
+     * The optional persistent cache for the rendered tile images.
+     */
+    private volatile DiskTileCache diskCache;
+    /**
+     * The images which are no longer needed, for rendering other tiles on.
+     */
+    private volatile TileImagePool imagePool;
+    /**
+     * The tile stores for zoom levels other than the current one, per tile
+     * provider and zoom level at which the tiles are rendered. Guarded by
+     * {@link #TILE_CACHE_LOCK}.
+     */
+    private final Map<TileProvider, Map<Integer, TileStore>> zoomLevelStores = new HashMap<>();
+    /**
+     * The tile render jobs which are currently being executed, so that they
+     * can be cancelled.
+     */
+    private final Set<TileRenderJob> runningJobs = ConcurrentHashMap.newKeySet();
+    /**
+     * Scratch rectangle for {@link #paintComponent(Graphics)} and
+     * {@link #paintTile(Graphics2D, GraphicsConfiguration, TileProvider, int, int, int, Image, TileStore, TileStore)}, which are only invoked on
+     * the event dispatch thread.
+     */
+    private final Rectangle paintTileBounds = new Rectangle();
+    /**
+     * The tiles of each layer for {@link #paintView(Graphics2D, Rectangle,
+     * GraphicsConfiguration)}, reused from paint to paint so that painting
+     * does not have to allocate them. Only used on the event dispatch thread.
+     */
+    private LayerTiles[] paintLayers = new LayerTiles[0];
     /**
      * The currently configured overlays.
      */
@@ -1733,16 +3981,20 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
      * <p>The default zoom is 1 (200%) for HiDPI displays and 0 (100%) for
      * regular displays.
      */
-    private int zoom = (getUIScale() < 1.5f) ? 0 : 1;
+    private volatile int zoom = (getUIScale() < 1.5f) ? 0 : 1;
     /**
      * The size in image coordinates of the grid to paint, if any.
      */
     private int gridSize = 128;
     /**
-     * The executor service to use for executing tile render jobs in the
-     * background.
+     * The registration with the tile render scheduler through which to submit
+     * tile render jobs, while this viewer is displayable.
      */
-    private ExecutorService tileRenderers;
+    private volatile TileRenderScheduler.Client tileRenderers;
+    /**
+     * The scheduler which executes the tile render jobs.
+     */
+    private volatile TileRenderScheduler scheduler = TileRenderScheduler.getDefault();
     /**
      * Whether a mouse drag operation is currently in progress.
      */
@@ -1758,7 +4010,7 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     /**
      * The queue for submitting background tile render jobs.
      */
-    private BlockingQueue<Runnable> queue;
+    private TileRenderQueue queue;
     /**
      * The currently configured external listener interested in changes to the
      * view.
@@ -1772,13 +4024,193 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
     private BackgroundImageMode backgroundImageMode = BackgroundImageMode.CENTRE_REPEAT;
     private volatile boolean inhibitUpdates;
     private int labelScale = 1;
+    /**
+     * The cached rendering of the grid. Only used on the event dispatch
+     * thread.
+     */
+    private final GridOverlay gridOverlay = new GridOverlay(NORMAL_FONT, BOLD_FONT);
+    /**
+     * The width in tiles of the ring around the viewport in which to render
+     * tiles in advance.
+     */
+    private int prefetchRing;
+    /**
+     * The smoothed recent velocity of panning in pixels per movement, and the
+     * time of the last movement.
+     */
+    private int panVelocityX, panVelocityY;
+    private long lastPanTime;
+    /**
+     * Whether to render the tiles for adjacent zoom levels in advance.
+     */
+    private boolean zoomPrefetch;
+    /**
+     * Whether the view is scrolled by copying the part of it which remains
+     * visible. May be read on any thread.
+     */
+    private volatile boolean scrollBlit;
+    /**
+     * Whether the view keeps a composite of its background and tiles between
+     * repaints. May be read on any thread.
+     */
+    private volatile boolean compositeRetained;
+    /**
+     * The copy of the background and tiles of the view, if {@link #scrollBlit}
+     * or {@link #compositeRetained} is enabled and the view has been painted.
+     * Only used on the event dispatch thread.
+     */
+    private VolatileImage viewBuffer;
+    /**
+     * The device scale with which the {@link #viewBuffer} was created.
+     */
+    private double viewBufferScaleX, viewBufferScaleY;
+    /**
+     * The background of the view, rendered from the background image
+     * according to the background image mode, and the background colour with
+     * which it was rendered. Only used on the event dispatch thread.
+     */
+    private VolatileImage backgroundBuffer;
+    private Color backgroundBufferColour;
+    /**
+     * The device scale with which the {@link #backgroundBuffer} was created.
+     */
+    private double backgroundBufferScaleX, backgroundBufferScaleY;
+    /**
+     * Whether the background image or its mode have changed since the
+     * {@link #backgroundBuffer} was rendered.
+     */
+    private volatile boolean backgroundBufferStale;
+    /**
+     * The regions of the {@link #viewBuffer} which are out of date. Guarded by
+     * itself, since repaints may be requested from any thread.
+     */
+    private final java.util.List<Rectangle> invalidRegions = new ArrayList<>();
+    /**
+     * The maximum number of tiles for adjacent zoom levels to render
+     * concurrently, and the maximum combined size in bytes of the tiles to
+     * render for adjacent zoom levels for one view.
+     */
+    private final int zoomPrefetchThreads;
+    private final long zoomPrefetchMaxBytes;
+    /**
+     * The maximum number of zoom levels other than the current one for which
+     * to keep the tile store of each tile provider.
+     */
+    private final int retainedZoomLevels;
+    /**
+     * The currently active plan for rendering the tiles for adjacent zoom
+     * levels, if any.
+     */
+    private volatile ZoomPrefetchPlan zoomPrefetchPlan;
+    private final LongAdder zoomPrefetchHits = new LongAdder(), zoomPrefetchMisses = new LongAdder();
+    /**
+     * The timer with which the areas of rendered tiles are repainted in
+     * batches, or {@code null} if they are repainted immediately. Only runs
+     * while there are tiles to repaint.
+     */
+    private final javax.swing.Timer tileRepaintTimer;
+    /**
+     * The tiles of which the area is to be repainted in the next batch.
+     * Guarded by itself, since tiles are rendered on other threads.
+     */
+    private final java.util.List<PendingTileRepaint> pendingTileRepaints = new ArrayList<>();
+    private final LongAdder tileRepaintFrames = new LongAdder(), repaintedTiles = new LongAdder();
+    /**
+     * The time in ns of the last batch of tile repaints, and the start time
+     * and number of subsequent batches of the current frame rate measurement.
+     * Only written on the event dispatch thread.
+     */
+    private volatile long lastTileRepaintFrame = System.nanoTime() - 2_000_000_000L;
+    private long tileRepaintFrameRateStart;
+    private int tileRepaintFrameRateCount;
+    private volatile float tileRepaintFrameRate;
+    /**
+     * The strategy with which the tiles of tile providers which have no
+     * preference are rendered.
+     */
+    private volatile TileRenderStrategy renderStrategy = TileRenderStrategy.FIXED_POOL;
+    /**
+     * The atlas into which rendered tiles are packed, or {@code null} if each
+     * tile is rendered to its own accelerated image.
+     */
+    private volatile TileAtlas atlas;
 
+    /**
+     * The most common tile size. Tile providers may use any power of two as
+     * their {@link TileProvider#getTileSize() tile size}.
+     */
     public static final int TILE_SIZE = 128, TILE_SIZE_BITS = 7, TILE_SIZE_MASK = 0x7f;
+    /**
+     * The maximum number of background threads to use for rendering tiles, shared by all viewers using the same
+     * {@link TileRenderScheduler}.
+     */
     public static final IntegerAttributeKey ADVANCED_SETTING_MAX_TILE_RENDER_THREADS = new IntegerAttributeKey("display.maxTileRenderThreads", 8);
+    /**
+     * The default size in MB of the memory budget for fresh tile images of each viewer.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_TILE_CACHE_SIZE = new IntegerAttributeKey("display.tileCacheSize", 256);
+    /**
+     * The default width in tiles of the ring around the viewport in which tiles are rendered in advance. 0 (the
+     * default) disables prefetching, so that viewers only render an extra ring of tiles if they opt in with
+     * {@link #setPrefetchRing(int)}.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_TILE_PREFETCH_RING = new IntegerAttributeKey("display.tilePrefetchRing", 0);
+    /**
+     * The maximum number of tiles for adjacent zoom levels to render concurrently when zoom prefetching is enabled.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_ZOOM_PREFETCH_THREADS = new IntegerAttributeKey("display.zoomPrefetchThreads", 1);
+    /**
+     * The maximum combined size in MB of the tiles to render for adjacent zoom levels for one view when zoom
+     * prefetching is enabled.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_ZOOM_PREFETCH_CACHE_SIZE = new IntegerAttributeKey("display.zoomPrefetchCacheSize", 64);
+    /**
+     * The maximum number of zoom levels, other than the current one, for which to keep the tiles of each tile provider.
+     * The finer zoom levels from which the viewer builds the zoomed out tiles of tile providers which do not implement
+     * zooming themselves do not count towards this while they are needed for the current zoom level.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_RETAINED_ZOOM_LEVELS = new IntegerAttributeKey("display.retainedZoomLevels", 4);
+    /**
+     * The maximum number of background threads to use for rendering tiles if any tile provider uses the
+     * {@link TileRenderStrategy#IO_BOUND} strategy. Only {@link #ADVANCED_SETTING_MAX_TILE_RENDER_THREADS} of them will
+     * be painting tiles at the same time; the rest are waiting for I/O.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_IO_BOUND_TILE_RENDER_THREADS = new IntegerAttributeKey("display.ioBoundTileRenderThreads", 64);
+    /**
+     * The default width and height in pixels of the pages of the tile atlas into which rendered tiles are packed, or
+     * zero to render each tile to its own accelerated image.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_TILE_ATLAS_PAGE_SIZE = new IntegerAttributeKey("display.tileAtlasPageSize", 0);
+    /**
+     * The maximum number of tile images which are no longer needed to keep for reuse by each viewer.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_TILE_IMAGE_POOL_SIZE = new IntegerAttributeKey("display.tileImagePoolSize", 64);
+    /**
+     * The maximum number of times per second the areas of tiles which have been rendered are repainted, in batches.
+     * Zero means the area of each tile is repainted as soon as it has been rendered.
+     */
+    public static final IntegerAttributeKey ADVANCED_SETTING_TILE_REPAINT_RATE = new IntegerAttributeKey("display.tileRepaintRate", 60);
     
     static final AtomicLong jobSeq = new AtomicLong(Long.MIN_VALUE);
+    /**
+     * The time in ms after which the pan velocity is no longer considered to
+     * be current.
+     */
+    private static final long PAN_VELOCITY_TIMEOUT = 500;
+    /**
+     * The number of zoomed out mipmap levels to build for tile providers which
+     * do not implement zooming themselves. Beyond this the tiles of the
+     * coarsest level are scaled down.
+     */
+    private static final int MAX_MIPMAP_LEVEL = 8;
+
+    /**
+     * The number of separate out of date regions of the copy of the view kept
+     * for scroll blitting and as retained composite, beyond which they are
+     * merged into one.
+     */
+    private static final int MAX_INVALID_REGIONS = 16;
 
-    private static final Reference<VolatileImage> RENDERING = new SoftReference<>(null);
     private static final VolatileImage NO_TILE = new VolatileImage() {
         @Override public BufferedImage getSnapshot() {return null;}
         @Override public int getWidth() {return 0;}
@@ -1791,74 +4223,368 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         @Override public int getHeight(ImageObserver observer) {return 0;}
         @Override public Object getProperty(String name, ImageObserver observer) {return null;}
     };
+    private static final TileCache.Entry NO_TILE_ENTRY = new TileCache.Entry(NO_TILE);
+    /**
+     * The translucent tile images, of all viewers, which are known to be fully
+     * opaque anyway.
+     */
+    private static final Set<Image> OPAQUE_TILES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
     private static final Font NORMAL_FONT = new Font("SansSerif", Font.PLAIN, (int) (10 * getUIScale()));
     private static final Font BOLD_FONT = new Font("SansSerif", Font.BOLD, (int) (10 * getUIScale()));
     private static final long serialVersionUID = 1L;
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TiledImageViewer.class);
 
-    class TileRenderJob implements Runnable, Comparable<TileRenderJob> {
-        TileRenderJob(Map<Point, Reference<? extends Image>> tileCache, Map<Point, Reference<? extends Image>> dirtyTileCache, Point coords, TileProvider tileProvider, int effectiveZoom, Image image) {
-            this.tileCache = tileCache;
-            this.dirtyTileCache = dirtyTileCache;
-            this.coords = coords;
+    class TileRenderJob implements Runnable, Comparable<TileRenderJob>, CancellationToken {
+        TileRenderJob(TileStore tileStore, int x, int y, TileProvider tileProvider, int effectiveZoom, int renderZoom, Image image, JobType type, ZoomPrefetchPlan plan) {
+            this.tileStore = tileStore;
+            this.type = type;
+            this.plan = plan;
+            this.x = x;
+            this.y = y;
             this.tileProvider = tileProvider;
             this.effectiveZoom = effectiveZoom;
+            this.renderZoom = renderZoom;
             this.image = image;
+            generation = tileStore.getGeneration();
             seq = jobSeq.getAndIncrement();
-            priority = tileProvider.getTilePriority(coords.x, coords.y);
+            // Mipmap tiles are prioritised according to the first tile they contain
+            priority = (tileProvider.isZoomSupported() || (renderZoom >= 0)) ? tileProvider.getTilePriority(x, y) : tileProvider.getTilePriority(x << -renderZoom, y << -renderZoom);
         }
         
         @Override
         public void run() {
-            if (logger.isTraceEnabled()) {
-                logger.trace("Rendering tile " + coords.x + "," + coords.y);
+            if (batch != null) {
+                runningJobs.addAll(batch);
+                try {
+                    renderBatch();
+                } finally {
+                    batch.forEach(runningJobs::remove);
+                }
+                return;
             }
-            final int tileSize = tileProvider.getTileSize();
-            VolatileImage tile;
-            if (image instanceof VolatileImage) {
-                // This image was previously created by us, here, so really it should still be compatible
-                tile = (VolatileImage) image;
-            } else {
-                GraphicsConfiguration gc = getGraphicsConfiguration();
-                if (gc != null) {
-                    tile = gc.createCompatibleVolatileImage(tileSize, tileSize, Transparency.TRANSLUCENT);
-                    tile.validate(gc);
+            runningJobs.add(this);
+            try {
+                render();
+            } finally {
+                runningJobs.remove(this);
+                final ZoomPrefetchPlan plan = this.plan;
+                if (plan != null) {
+                    // A deferred job no longer counts against the plan when it
+                    // is run again
+                    this.plan = null;
+                    plan.jobFinished();
+                }
+            }
+        }
+
+        /**
+         * Indicates whether the tile is at the current zoom level of the tile
+         * provider and is not a {@link #mipmapSource mipmap source}, so that
+         * it may be painted in a batch with other tiles in the same block.
+         */
+        boolean isBatchable() {
+            return (type != JobType.ZOOM_PREFETCH) && (! mipmapSource) && isCurrentZoom(tileProvider, renderZoom);
+        }
+
+        /**
+         * Indicates whether another job may be rendered in the same batch as
+         * this one.
+         */
+        boolean canBatchWith(TileRenderJob job) {
+            return (job.tileStore == tileStore) && (job.renderZoom == renderZoom) && (job.type != JobType.ZOOM_PREFETCH);
+        }
+
+        /**
+         * Indicates whether the tile is no longer needed. The tile provider is
+         * asked to abandon it, but if it is rendered anyway it is still stored.
+         */
+        @Override
+        public boolean isCancelled() {
+            return cancelled || isObsolete();
+        }
+
+        /**
+         * Ask the tile provider to abandon the tile, because it is no longer
+         * needed.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Ask the tile provider to abandon the tile and throw away the result
+         * if it is rendered anyway, because it would be out of date.
+         */
+        void discard() {
+            discarded = true;
+        }
+
+        /**
+         * Indicates whether the result of the job would be out of date, either
+         * because it was {@link #discard() discarded} or because the tile store
+         * for which it was scheduled is no longer in use.
+         */
+        boolean isObsolete() {
+            return discarded || (tileStore.getGeneration() != generation);
+        }
+
+        /**
+         * Forget about the tile if it is still marked as being rendered by
+         * this job, as opposed to by a job which has replaced it, so that it will be scheduled again if it is needed.
+         */
+        void forget() {
+            final TileRenderJob waitingJob;
+            final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+            synchronized (stripe) {
+                if (stripe.tiles.get(x, y) == marker) {
+                    stripe.tiles.remove(x, y);
+                    waitingJob = stripe.waitingJobs.remove(x, y);
+                } else {
+                    waitingJob = null;
+                }
+                if (stripe.prefetchJobs.get(x, y) == this) {
+                    stripe.prefetchJobs.remove(x, y);
+                }
+            }
+            if (waitingJob != null) {
+                waitingJob.finerTileDone(false);
+            }
+        }
+
+        /**
+         * Defer the job until the tiles of the next finer zoom level for which
+         * it has been registered as waiting have been rendered, after which it
+         * will be run again. Must be invoked by the render thread running the
+         * job, while holding the monitor of the job.
+         *
+         * @param tileCount The number of tiles for which the job is waiting.
+         */
+        void defer(int tileCount) {
+            // The current run counts as one more, so that the job is not run
+            // again before the current run has ended
+            awaitedTiles = tileCount + 1;
+            deferred = true;
+        }
+
+        /**
+         * Invoked when a tile of the next finer zoom level for which this job
+         * is waiting has been rendered or turned out not to be present, or has
+         * been abandoned. Runs the job again once all the tiles for which it is
+         * waiting are available, or forgets about the tile if one of them has
+         * been abandoned and has its area repainted, so that it will be
+         * scheduled again if it is still needed.
+         *
+         * @param available Whether the tile is available, as opposed to
+         *                  abandoned.
+         */
+        void finerTileDone(boolean available) {
+            final boolean resume;
+            synchronized (this) {
+                if (awaitedTiles == 0) {
+                    // Already abandoned
+                    return;
+                } else if (available) {
+                    resume = --awaitedTiles == 0;
                 } else {
-                    // No idea how this is possible, but it has been observed in the wild. Perhaps it means the
-                    // TiledImageViewer has been removed from the hierarchy? Let's assume that and just give up
-                    logger.debug("Not rendering tile " + coords.x + "," + coords.y + " because there is no GraphicsConfiguration");
+                    awaitedTiles = 0;
+                    resume = false;
+                }
+            }
+            if (! available) {
+                forget();
+                if (type != JobType.ZOOM_PREFETCH) {
+                    repaintTile(tileProvider, x, y, effectiveZoom);
+                }
+            } else if (resume) {
+                final TileRenderScheduler.Client tileRenderers = TiledImageViewer.this.tileRenderers;
+                if (tileRenderers == null) {
+                    forget();
                     return;
                 }
+                try {
+                    tileRenderers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // The render threads have been shut down
+                    forget();
+                }
+            }
+        }
+
+        private void render() {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Rendering tile " + x + "," + y);
+            }
+            if (! isNeeded()) {
+                forget();
+                return;
+            }
+            final Image tile = createImage();
+            if (tile != null) {
+                final boolean rendered = renderTile(tileProvider, renderZoom, x, y, tile, this);
+                if (deferred) {
+                    // Waiting for the tiles of the next finer zoom level; the
+                    // job will be run again once they have been rendered
+                    deferred = false;
+                    if (tile != image) {
+                        recycle(tile);
+                    }
+                    finerTileDone(true);
+                } else {
+                    finish(tile, rendered);
+                }
+            }
+        }
+
+        /**
+         * Render the tiles of all the jobs in the {@link #batch} with one
+         * invocation of {@link TileProvider#paintTiles(Image[], int[], int[],
+         * CancellationToken[])}.
+         */
+        private void renderBatch() {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Rendering batch of " + batch.size() + " tiles from tile " + x + "," + y);
+            }
+            if (! isCurrentZoom(tileProvider, renderZoom)) {
+                // The zoom level has changed since the batch was put together; render the tiles one by one
+                batch.forEach(TileRenderJob::render);
+                return;
+            }
+            final java.util.List<TileRenderJob> jobs = new ArrayList<>(batch.size());
+            final java.util.List<Image> tiles = new ArrayList<>(batch.size());
+            for (TileRenderJob job: batch) {
+                if (! job.isNeeded()) {
+                    job.forget();
+                    continue;
+                }
+                final Image tile = job.createImage();
+                if (tile != null) {
+                    jobs.add(job);
+                    tiles.add(tile);
+                }
+            }
+            final boolean[] rendered = renderTiles(tileProvider, renderZoom, jobs, tiles.toArray(new Image[tiles.size()]));
+            for (int i = 0; i < rendered.length; i++) {
+                jobs.get(i).finish(tiles.get(i), rendered[i]);
+            }
+        }
+
+        /**
+         * Indicates whether the tile still needs to be rendered. If not, the
+         * tile is no longer needed, or the zoom level has changed since the
+         * tile was scheduled and the tile provider can't paint it at the zoom
+         * level it was scheduled for. It should then be forgotten about; it
+         * will be scheduled again if it is needed.
+         */
+        private boolean isNeeded() {
+            return (! (tileProvider.isZoomSupported() && (tileProvider.getZoom() != renderZoom) && (! tileProvider.isPaintAtZoomSupported())))
+                    && (! isCancelled());
+        }
+
+        /**
+         * Get the image on which to render the tile.
+         *
+         * @return The image on which to render the tile, or {@code null} if
+         * the tile cannot be rendered.
+         */
+        private Image createImage() {
+            if ((image instanceof VolatileImage) && (! (image instanceof TileAtlas.Tile))) {
+                // This image was previously created by us, here, so really it should still be compatible
+                return image;
+            }
+            final GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (gc != null) {
+                final int tileSize = tileProvider.getTileSize();
+                final boolean opaque = isOpaque(tileProvider, renderZoom);
+                if (mipmapSource || (atlas != null)) {
+                    // The tile will be read back to build a zoomed out tile, or copied into the tile atlas once it has
+                    // been rendered
+                    return imagePool.getBufferedImage(tileSize, opaque);
+                }
+                return imagePool.getVolatileImage(gc, tileSize, opaque);
+            } else {
+                // No idea how this is possible, but it has been observed in the wild. Perhaps it means the
+                // TiledImageViewer has been removed from the hierarchy? Let's assume that and just give up
+                logger.debug("Not rendering tile " + x + "," + y + " because there is no GraphicsConfiguration");
+                return null;
             }
-            if (tileProvider.paintTile(tile, coords.x, coords.y, 0, 0)) {
-                synchronized (TILE_CACHE_LOCK) {
-                    tileCache.put(coords, new SoftReference<>(tile));
-                    if (dirtyTileCache.containsKey(coords)) {
-                        dirtyTileCache.remove(coords);
+        }
+
+        /**
+         * Store the result of rendering the tile and have it painted.
+         */
+        private void finish(Image tile, boolean rendered) {
+            final TileRenderJob waitingJob;
+            if (isObsolete() || ((! rendered) && cancelled)) {
+                // Either the result is out of date, or the tile was abandoned and may still be needed later
+                forget();
+                if (tile != image) {
+                    recycle(tile);
+                }
+                return;
+            } else if (rendered) {
+                // Add the tile to the memory budget outside the lock, since a shared cache may have to evict tiles of
+                // other viewers
+                final Image cachedImage = mipmapSource ? tile : toCachedImage(tile);
+                setTileOpaque(cachedImage, isTileOpaque(tileProvider, renderZoom, x, y, tile));
+                final TileCache.Entry entry = cache.put(cachedImage);
+                if ((cachedImage != tile) && (tile != image)) {
+                    // The tile was copied into the tile atlas
+                    recycle(tile);
+                }
+                final Image previousImage, staleImage;
+                final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+                synchronized (stripe) {
+                    if (stripe.prefetchJobs.get(x, y) == this) {
+                        stripe.prefetchJobs.remove(x, y);
                     }
+                    final TileCache.Entry previousEntry = stripe.tiles.put(x, y, entry);
+                    previousImage = ((previousEntry != null) && (previousEntry != entry)) ? cache.release(previousEntry).get() : null;
+                    staleImage = getImage(stripe.dirtyTiles.remove(x, y));
+                    waitingJob = stripe.waitingJobs.remove(x, y);
+                }
+                if (type == JobType.ZOOM_PREFETCH) {
+                    tileStore.markZoomPrefetched();
+                }
+                // The images which this tile replaces are no longer needed, unless this job reused one of them
+                if (previousImage != cachedImage) {
+                    recycle(previousImage);
+                }
+                if (staleImage != cachedImage) {
+                    recycle(staleImage);
                 }
             } else {
                 // The tile failed to be painted for some reason; treat it as a permanent condition and register it as
                 // "no tile present"
-                synchronized (TILE_CACHE_LOCK) {
-                    tileCache.put(coords, new SoftReference<>(NO_TILE));
-                    if (dirtyTileCache.containsKey(coords)) {
-                        dirtyTileCache.remove(coords);
+                final Image staleImage;
+                final TileStore.Stripe stripe = tileStore.getStripe(x, y);
+                synchronized (stripe) {
+                    if (stripe.prefetchJobs.get(x, y) == this) {
+                        stripe.prefetchJobs.remove(x, y);
                     }
+                    stripe.tiles.put(x, y, NO_TILE_ENTRY);
+                    staleImage = getImage(stripe.dirtyTiles.remove(x, y));
+                    waitingJob = stripe.waitingJobs.remove(x, y);
+                }
+                recycle(staleImage);
+                if (tile != image) {
+                    recycle(tile);
                 }
                 // Repaint still needed, as a dirty tile may have been painted in its location
             }
-            try {
-                repaint(getTileBounds(coords.x, coords.y, effectiveZoom));
-            } catch (UnknownTileProviderException e) {
-                // This means the tile provider is no longer configured on the viewer, meaning there's not much point in
-                // us painting the tile, so just give up silently
+            if (waitingJob != null) {
+                waitingJob.finerTileDone(true);
+            }
+            if (type != JobType.ZOOM_PREFETCH) {
+                repaintTile(tileProvider, x, y, effectiveZoom);
             }
         }
 
         @Override
         public int compareTo(TileRenderJob o) {
-            if (priority != o.priority) {
+            if (type != o.type) {
+                // Prefetch jobs must never hold up visible tiles
+                return type.compareTo(o.type);
+            } else if (priority != o.priority) {
                 return o.priority - priority;
             } else {
                 return (seq > o.seq) ? 1 : -1;
@@ -1866,11 +4592,354 @@ public class TiledImageViewer extends JComponent implements TileListener, MouseL
         }
         
         private final long seq;
-        private final Map<Point, Reference<? extends Image>> tileCache, dirtyTileCache;
-        private final Point coords;
-        private final TileProvider tileProvider;
-        private final int effectiveZoom, priority;
+        private final TileStore tileStore;
+        final int x, y;
+        final TileProvider tileProvider;
+        final int effectiveZoom;
+        private final int renderZoom, priority, generation;
         private final Image image;
+        final JobType type;
+        private ZoomPrefetchPlan plan;
+        /**
+         * The marker which indicates in the tile store that the tile is being
+         * rendered by this job.
+         */
+        final TileCache.Entry marker = new TileCache.Entry(null);
+        private volatile boolean cancelled, discarded;
+        /**
+         * The number of tiles of the next finer zoom level for which the job
+         * is waiting, plus one while the run which deferred it has not ended
+         * yet, or zero if it is not waiting. Guarded by the monitor of the job.
+         */
+        private int awaitedTiles;
+        /**
+         * Whether the current run of the job has been deferred. Only accessed
+         * by the render thread running the job.
+         */
+        private boolean deferred;
+        /**
+         * The jobs which are to be rendered together, starting with this one,
+         * if the tile provider {@link TileProvider#getTileBatchSize() paints
+         * tiles in batches}. Set by the {@link TileRenderQueue} when it hands
+         * out the job.
+         */
+        java.util.List<TileRenderJob> batch;
+        /**
+         * Whether the job renders a tile of a finer zoom level for a zoomed
+         * out tile which is waiting for it, rather than a tile of the zoom
+         * level of the view. Set before the job is queued. The tile is kept on
+         * the heap rather than in the tile atlas or on the graphics card, so
+         * that it can be read back cheaply.
+         */
+        boolean mipmapSource;
+        /**
+         * The tile images of the next finer zoom level which the job is
+         * reading back to build a zoomed out tile, if any. They are taken from
+         * the tile store while holding the monitor of their stripe, so that
+         * {@link #recycle(Image)} will not return them to the tile image pool
+         * if they are replaced or released while they are being read.
+         */
+        volatile Image[] mipmapSources;
+        /**
+         * Whether the job is in the render queue. Guarded by the monitor of the {@link TileRenderQueue}.
+         */
+        boolean queued;
+    }
+
+    /**
+     * The kinds of tile render jobs, in order of precedence.
+     */
+    enum JobType {
+        /**
+         * A tile which is currently visible.
+         */
+        VISIBLE,
+        /**
+         * A tile in the prefetch ring around the viewport.
+         */
+        PREFETCH,
+        /**
+         * A tile for an adjacent zoom level.
+         */
+        ZOOM_PREFETCH
+    }
+
+    /**
+     * The tiles to prefetch for the zoom levels adjacent to the current view.
+     * At most {@link #ADVANCED_SETTING_ZOOM_PREFETCH_THREADS} of the jobs are
+     * submitted to the render queue at a time, where they will only be picked
+     * up when no visible or prefetch ring tiles are waiting to be rendered.
+     */
+    final class ZoomPrefetchPlan {
+        ZoomPrefetchPlan(int viewX, int viewY, int zoom, int width, int height) {
+            this.viewX = viewX;
+            this.viewY = viewY;
+            this.zoom = zoom;
+            this.width = width;
+            this.height = height;
+        }
+
+        boolean isFor(int viewX, int viewY, int zoom, int width, int height) {
+            return (viewX == this.viewX) && (viewY == this.viewY) && (zoom == this.zoom) && (width == this.width) && (height == this.height);
+        }
+
+        /**
+         * Submit pending jobs to the render queue until the maximum number of
+         * jobs in flight has been reached.
+         */
+        void submitJobs() {
+            while (! cancelled) {
+                if (inFlight.incrementAndGet() > zoomPrefetchThreads) {
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                final TileRenderJob job = pending.poll();
+                final TileRenderScheduler.Client tileRenderers = TiledImageViewer.this.tileRenderers;
+                if ((job == null) || (tileRenderers == null)) {
+                    inFlight.decrementAndGet();
+                    return;
+                }
+                final TileStore.Stripe stripe = job.tileStore.getStripe(job.x, job.y);
+                synchronized (stripe) {
+                    if (stripe.tiles.containsKey(job.x, job.y)) {
+                        // Already rendered or scheduled in the mean time
+                        inFlight.decrementAndGet();
+                        continue;
+                    } else if (! isTilePresent(job.tileProvider, job.renderZoom, job.x, job.y)) {
+                        stripe.tiles.put(job.x, job.y, NO_TILE_ENTRY);
+                        inFlight.decrementAndGet();
+                        continue;
+                    }
+                    stripe.tiles.put(job.x, job.y, job.marker);
+                }
+                try {
+                    tileRenderers.execute(job);
+                } catch (RejectedExecutionException e) {
+                    // The render threads have been shut down
+                    cancel();
+                    inFlight.decrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        void jobFinished() {
+            inFlight.decrementAndGet();
+            submitJobs();
+        }
+
+        void cancel() {
+            cancelled = true;
+            pending.clear();
+        }
+
+        final int viewX, viewY, zoom, width, height;
+        final Queue<TileRenderJob> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean cancelled;
+    }
+
+    /**
+     * A tile of which the area is to be repainted in the next batch of tile
+     * repaints.
+     */
+    private static final class PendingTileRepaint {
+        PendingTileRepaint(TileProvider tileProvider, int x, int y, int effectiveZoom) {
+            this.tileProvider = tileProvider;
+            this.x = x;
+            this.y = y;
+            this.effectiveZoom = effectiveZoom;
+        }
+
+        final TileProvider tileProvider;
+        final int x, y, effectiveZoom;
+    }
+
+    /**
+     * The tiles of one layer which intersect the area being painted, together
+     * with the freshest available version of each of them. The buffers are
+     * reused from paint to paint and grow as needed. Only used on the event
+     * dispatch thread.
+     */
+    private final class LayerTiles {
+        /**
+         * Get the tiles of the {@link #tileProvider} which intersect an area
+         * of the view. Tiles of which no fresh version is available are
+         * scheduled to be rendered, in a spiralish fashion from the centre of
+         * the area outwards, except for tiles which are completely hidden by
+         * the opaque tiles of a layer above.
+         *
+         * @param layers The tiles of all layers, from the bottom up, of which
+         *               those above this layer must already have been
+         *               obtained.
+         * @param layerCount The number of layers.
+         * @param layer The index of this layer.
+         */
+        void getTiles(Rectangle clipBounds, GraphicsConfiguration gc, LayerTiles[] layers, int layerCount, int layer) {
+            this.clipBounds = clipBounds;
+            this.layers = isOpaqueLayerAbove(layers, layerCount, layer) ? layers : null;
+            this.layerCount = layerCount;
+            this.layer = layer;
+            effectiveZoom = getEffectiveZoom(tileProvider, zoom);
+            tileSizeBits = getTileSizeBits(tileProvider);
+            leftTile = toTileX(clipBounds.x);
+            topTile = toTileY(clipBounds.y);
+            final int rightTile = toTileX(clipBounds.x + clipBounds.width - 1);
+            final int bottomTile = toTileY(clipBounds.y + clipBounds.height - 1);
+            width = rightTile - leftTile + 1;
+            height = bottomTile - topTile + 1;
+            final int tileCount = width * height;
+            if (images.length < tileCount) {
+                images = new Image[tileCount];
+                hidden = new boolean[tileCount];
+                order = new int[tileCount];
+            } else {
+                Arrays.fill(hidden, 0, tileCount, false);
+            }
+            count = 0;
+            hasOpaqueTiles = false;
+
+            final int middleTileX = (leftTile + rightTile) / 2;
+            final int middleTileY = (topTile + bottomTile) / 2;
+            final int radius = Math.max(
+                    Math.max(middleTileX - leftTile, rightTile - middleTileX),
+                    Math.max(middleTileY - topTile, bottomTile - middleTileY));
+
+            // Get the tiles in a spiralish fashion, so that missing tiles are generated in that order
+            add(middleTileX, middleTileY, gc);
+            for (int r = 1; r <= radius; r++) {
+                for (int i = 0; i < (r * 2); i++) {
+                    int tileX = middleTileX + i - r, tileY = middleTileY - r;
+                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
+                        add(tileX, tileY, gc);
+                    }
+                    tileX = middleTileX + r;
+                    tileY = middleTileY + i - r;
+                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
+                        add(tileX, tileY, gc);
+                    }
+                    tileX = middleTileX + r - i;
+                    tileY = middleTileY + r;
+                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
+                        add(tileX, tileY, gc);
+                    }
+                    tileX = middleTileX - r;
+                    tileY = middleTileY - i + r;
+                    if ((tileX >= leftTile) && (tileX <= rightTile) && (tileY >= topTile) && (tileY <= bottomTile)) {
+                        add(tileX, tileY, gc);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Let go of the tile provider and tile images after painting, so that
+         * they are not kept reachable until the next paint.
+         */
+        void clear() {
+            Arrays.fill(images, 0, width * height, null);
+            tileProvider = null;
+            clipBounds = null;
+            layers = null;
+        }
+
+        /**
+         * Indicates whether an area of the view, which must lie within the
+         * area for which the tiles were obtained, is completely covered by
+         * opaque tiles of this layer.
+         */
+        boolean covers(int x, int y, int width, int height) {
+            if ((! hasOpaqueTiles) || (width <= 0) || (height <= 0)) {
+                return false;
+            }
+            final int left = toTileX(x) - leftTile, top = toTileY(y) - topTile;
+            final int right = toTileX(x + width - 1) - leftTile, bottom = toTileY(y + height - 1) - topTile;
+            if ((left < 0) || (top < 0) || (right >= this.width) || (bottom >= this.height)) {
+                return false;
+            }
+            for (int tileY = top; tileY <= bottom; tileY++) {
+                for (int tileX = left; tileX <= right; tileX++) {
+                    final Image image = images[tileY * this.width + tileX];
+                    if ((image == null) || (! isTileOpaque(image))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void add(int x, int y, GraphicsConfiguration gc) {
+            final int index = (y - topTile) * width + (x - leftTile);
+            order[count++] = index;
+            if (layers != null) {
+                // Check the part of the tile which is being painted
+                final Rectangle tileBounds = getTileBounds(x, y, effectiveZoom, tileSizeBits, paintTileBounds);
+                final int left = Math.max(tileBounds.x, clipBounds.x), top = Math.max(tileBounds.y, clipBounds.y);
+                final int right = Math.min(tileBounds.x + tileBounds.width, clipBounds.x + clipBounds.width);
+                final int bottom = Math.min(tileBounds.y + tileBounds.height, clipBounds.y + clipBounds.height);
+                if (isHidden(layers, layerCount, layer, left, top, right - left, bottom - top)) {
+                    hidden[index] = true;
+                    return;
+                }
+            }
+            final Image image = getTile(tileProvider, x, y, effectiveZoom, gc);
+            images[index] = image;
+            if ((image != null) && isTileOpaque(image)) {
+                hasOpaqueTiles = true;
+            }
+        }
+
+        /**
+         * Get the X coordinate of the tile containing a horizontal position in
+         * the view.
+         */
+        private int toTileX(int x) {
+            return toWorld(x + viewX - xOffset) >> tileSizeBits;
+        }
+
+        /**
+         * Get the Y coordinate of the tile containing a vertical position in
+         * the view.
+         */
+        private int toTileY(int y) {
+            return toWorld(y + viewY - yOffset) >> tileSizeBits;
+        }
+
+        private int toWorld(int coord) {
+            return (effectiveZoom == 0) ? coord : ((effectiveZoom < 0) ? (coord << -effectiveZoom) : (coord >> effectiveZoom));
+        }
+
+        /**
+         * The tile provider of this layer. Set before the tiles are obtained.
+         */
+        TileProvider tileProvider;
+        int effectiveZoom, tileSizeBits, leftTile, topTile, width, height;
+        /**
+         * The freshest available version of each tile, if any, row by row.
+         */
+        Image[] images = new Image[0];
+        /**
+         * Whether each tile is completely hidden by the opaque tiles of a
+         * layer above, in which case it is not painted, nor obtained.
+         */
+        boolean[] hidden = new boolean[0];
+        /**
+         * The indices in {@link #images} of the tiles, in the order in which
+         * they were obtained.
+         */
+        int[] order = new int[0];
+        int count;
+        /**
+         * Whether any of the tiles of this layer is fully opaque.
+         */
+        boolean hasOpaqueTiles;
+        private Rectangle clipBounds;
+        /**
+         * The tiles of all layers, or {@code null} if none of the layers above
+         * this one has any opaque tiles.
+         */
+        private LayerTiles[] layers;
+        private int layerCount, layer;
     }
 
     /**